@@ -0,0 +1,103 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+
+/**
+ * Persisting scans to the site temp file, and reading it back when a site is opened.
+ * Each invocation works on a fresh temp directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileManagerBenchmark {
+
+    // Records removed by appendThenRemove, as an operator takes out stray scans
+    private static final int REMOVALS = 1000;
+
+    @Param({ "1000", "100000", "1000000" })
+    int items;
+
+    JobId[] records;
+    int[] removals;
+    Path dir;
+    SiteConfig config;
+    FileManager manager;
+
+    @Setup(Level.Trial)
+    public void createRecords() {
+        records = new JobId[items];
+        for (int i = 0; i < items; i++) {
+            records[i] = JobId.newInstance(1_000_000_000L + i);
+        }
+        // Anywhere in the list, so later records shift up as they would for the operator
+        Random random = new Random(42);
+        removals = new int[Math.min(items, REMOVALS)];
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = random.nextInt(items - i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void open() throws IOException {
+        dir = Files.createTempDirectory("despatch-bench");
+        config = SiteConfig.builder()
+                .SiteName(PrintSite.MORRISTON)
+                .TempFile(dir.resolve("temp").resolve("MORRISTON.txt").toString())
+                .DatFile(dir.resolve("MORRISTON.").toString())
+                .EotFile(dir.resolve("MORRISTON.").toString())
+                .Report(dir.resolve("MORRISTON.").toString())
+                .Repository(dir.toString())
+                .build();
+        manager = new FileManager(config);
+        manager.read();
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        manager.close();
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Benchmark
+    public FileManager append() throws IOException {
+        for (JobId record : records) {
+            manager.getItems().append(record);
+        }
+        return manager;
+    }
+
+    @Benchmark
+    public FileManager appendThenRemove() throws IOException {
+        for (JobId record : records) {
+            manager.getItems().append(record);
+        }
+        for (int index : removals) {
+            manager.getItems().removeAt(index);
+        }
+        return manager;
+    }
+
+    @Benchmark
+    public long[] read() throws IOException {
+        for (JobId record : records) {
+            manager.getItems().append(record);
+        }
+        manager.close();
+        manager = new FileManager(config);
+        return manager.read();
+    }
+}
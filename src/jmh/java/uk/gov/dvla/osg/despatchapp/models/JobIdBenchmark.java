@@ -0,0 +1,78 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing and validating Job IDs, as done for every scan and for every record read back
+ * from the temp file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JobIdBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    int items;
+
+    String[] barcodes;
+    long[] ids;
+    String[] records;
+
+    @Setup
+    public void setup() {
+        barcodes = new String[items];
+        ids = new long[items];
+        records = new String[items];
+        for (int i = 0; i < items; i++) {
+            ids[i] = 1_000_000_000L + i;
+            barcodes[i] = Long.toString(ids[i]);
+            records[i] = JobId.newInstance(ids[i]).toString();
+        }
+    }
+
+    @Benchmark
+    public int isValid() {
+        int valid = 0;
+        for (String barcode : barcodes) {
+            if (JobId.isValid(barcode)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public void newInstanceFromString(Blackhole bh) {
+        for (String barcode : barcodes) {
+            bh.consume(JobId.newInstance(barcode));
+        }
+    }
+
+    @Benchmark
+    public void newInstanceFromLong(Blackhole bh) {
+        for (long id : ids) {
+            bh.consume(JobId.newInstance(id));
+        }
+    }
+
+    @Benchmark
+    public void fromString(Blackhole bh) {
+        for (String record : records) {
+            bh.consume(JobId.fromString(record));
+        }
+    }
+
+    @Benchmark
+    public void render(Blackhole bh) {
+        JobId jid = JobId.newInstance(ids[0]);
+        for (int i = 0; i < items; i++) {
+            bh.consume(jid.toString());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Duplicate detection as done by the main form for each scan: a lookup in the index,
+ * then an add if the Job ID is new. One scan in ten is a repeat of an earlier one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JobIdIndexBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    int items;
+
+    long[] scans;
+    JobIdIndex full;
+
+    @Setup
+    public void setup() {
+        scans = new long[items];
+        full = new JobIdIndex();
+        for (int i = 0; i < items; i++) {
+            // Every tenth scan repeats the one before it
+            scans[i] = 1_000_000_000L + (i % 10 == 9 ? i - 1 : i) * 7919L;
+            full.add(scans[i]);
+        }
+    }
+
+    @Benchmark
+    public JobIdIndex scan() {
+        JobIdIndex index = new JobIdIndex();
+        for (long id : scans) {
+            if (!index.contains(id)) {
+                index.add(id);
+            }
+        }
+        return index;
+    }
+
+    @Benchmark
+    public int lookup() {
+        int found = 0;
+        for (long id : scans) {
+            if (full.contains(id)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public JobIdIndex addThenRemove() {
+        JobIdIndex index = new JobIdIndex();
+        for (long id : scans) {
+            index.add(id);
+        }
+        for (long id : scans) {
+            index.remove(id);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.ReportFormat;
+
+/**
+ * Generating the despatch report, without opening it, as a PDF alone and in every
+ * format at once. The heap is kept small to show the report is streamed rather than
+ * built in memory, and that extra formats do not add another copy of the batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx128m")
+public class ReportBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    int items;
+
+    @Param({ "PDF", "PDF,CSV,JSONL" })
+    String formats;
+
+    Path records;
+    File report;
+
+    @Setup
+    public void setup() throws IOException {
+        records = Files.createTempFile("despatch-bench", ".txt");
+        records.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(records)) {
+            for (int i = 0; i < items; i++) {
+                writer.write(JobId.newInstance(1_000_000_000L + i).toString());
+                writer.write('\n');
+            }
+        }
+        report = File.createTempFile("despatch-bench", ".pdf");
+        report.deleteOnExit();
+        for (ReportFormat format : ReportFormat.values()) {
+            new File(Report.withExtension(report.getPath(), format)).deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long writeReport() throws IOException {
+        ManifestWriter writer = new ManifestWriter("bench", "MORRISTON");
+        for (String format : formats.split(",")) {
+            writer.add(ReportFormat.valueOf(format), Paths.get(Report.withExtension(report.getPath(), ReportFormat.valueOf(format))));
+        }
+        writer.write(records);
+        return report.length();
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+
+/**
+ * Key handling for scanned barcodes, driven by synthetic KEY_TYPED events. Each barcode
+ * is ten digits followed by Enter, as sent by the scanners on the despatch floor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BarcodeReaderBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    int items;
+
+    // One event per digit, and Enter, reused for every barcode
+    KeyEvent[] digits = new KeyEvent[10];
+    KeyEvent enter;
+    char[][] barcodes;
+
+    @Setup
+    public void setup() {
+        for (int d = 0; d < 10; d++) {
+            digits[d] = keyTyped(String.valueOf((char) ('0' + d)));
+        }
+        enter = keyTyped("\r");
+        barcodes = new char[items][];
+        for (int i = 0; i < items; i++) {
+            barcodes[i] = Long.toString(1_000_000_000L + i).toCharArray();
+        }
+    }
+
+    @Benchmark
+    public void barcodeReader(Blackhole bh) {
+        BarcodeReader reader = new BarcodeReader();
+        for (char[] barcode : barcodes) {
+            for (char c : barcode) {
+                reader.handle(digits[c - '0']);
+            }
+            if (reader.handle(enter)) {
+                bh.consume(reader.getBarcode());
+            }
+        }
+    }
+
+    @Benchmark
+    public void numericBarcodeReader(Blackhole bh) {
+        NumericBarcodeReader reader = new NumericBarcodeReader();
+        for (char[] barcode : barcodes) {
+            for (char c : barcode) {
+                reader.handle(digits[c - '0']);
+            }
+            if (reader.handle(enter) && reader.isJobId()) {
+                bh.consume(reader.getJobId());
+            }
+        }
+    }
+
+    private static KeyEvent keyTyped(String character) {
+        return new KeyEvent(KeyEvent.KEY_TYPED, character, "", KeyCode.UNDEFINED, false, false, false, false);
+    }
+}
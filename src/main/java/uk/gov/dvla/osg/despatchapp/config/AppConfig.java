@@ -2,12 +2,20 @@ package uk.gov.dvla.osg.despatchapp.config;
 
 import java.io.File;
 import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import uk.gov.dvla.osg.despatchapp.models.Durability;
 import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+import uk.gov.dvla.osg.despatchapp.models.ReportFormat;
 
 public class AppConfig {
 
@@ -74,6 +82,21 @@ public class AppConfig {
     private String brpDatFile;
     private String brpEotFile;
     private String brpReportFile;
+    private int submitThreads;
+    private int mMaxRunVol;
+    private int fMaxRunVol;
+    private int brpMaxRunVol;
+    private int mScannerPort;
+    private int fScannerPort;
+    private String scannerBindAddress;
+    private int scannerConnections;
+    private List<String> mScannerHosts;
+    private List<String> fScannerHosts;
+    private Durability mDurability;
+    private Durability fDurability;
+    private int groupCommitMillis;
+    private int groupCommitRecords;
+    private Set<ReportFormat> reportFormats;
 
     /**
      * Instantiates a new network config from the fields in the property file.
@@ -96,27 +119,90 @@ public class AppConfig {
             // GENERAL PROPERTIES
             repoDir = loader.getProperty("repoDir");
             retentionPeriod = loader.getPropertyInt("retentionPeriod");
+            // Number of DAT/EOT pairs sent to RPD at the same time
+            submitThreads = loader.getPropertyInt("submitThreads", 4);
+            // How far a scan is saved before it is shown, FSYNC, GROUP_COMMIT or OS_BUFFERED
+            Durability durability = getDurability(loader, "durability", Durability.OS_BUFFERED);
+            // Longest wait, and most scans, before a group commit forces the temp file to disk
+            groupCommitMillis = loader.getPropertyInt("groupCommitMillis", 20);
+            groupCommitRecords = loader.getPropertyInt("groupCommitRecords", 100);
+            // Files written for each despatch report, any of PDF, CSV and JSONL
+            reportFormats = getReportFormats(loader, "reportFormats");
+            // Local address network scanners connect to, empty to accept only this PC
+            scannerBindAddress = loader.getProperty("scannerBindAddress", "");
+            // Most network scanners connected to a site at the same time
+            scannerConnections = loader.getPropertyInt("scannerConnections", 8);
             // MORRISTON PROPERTIES
             mTempFile = loader.getProperty("mTempFile");
             mDatFile = repoDir + loader.getProperty("mDatFile");
             mEotFile = repoDir + loader.getProperty("mEotFile");
             mReportFile = repoDir + loader.getProperty("mReportFile");
+            // Maximum Job IDs in a DAT file, 0 sends each batch as a single DAT file
+            mMaxRunVol = loader.getPropertyInt("mMaxRunVol", 0);
+            // Port for network scanners, 0 if there are none
+            mScannerPort = loader.getPropertyInt("mScannerPort", 0);
+            // Addresses of the network scanners allowed to connect, separated by commas
+            mScannerHosts = getList(loader, "mScannerHosts");
+            mDurability = getDurability(loader, "mDurability", durability);
             // TY FELIN PROPERTIES
             fTempFile = loader.getProperty("fTempFile");
             fDatFile = repoDir + loader.getProperty("fDatFile");
             fEotFile = repoDir + loader.getProperty("fEotFile");
             fReportFile = repoDir + loader.getProperty("fReportFile");
+            fMaxRunVol = loader.getPropertyInt("fMaxRunVol", 0);
+            fScannerPort = loader.getPropertyInt("fScannerPort", 0);
+            fScannerHosts = getList(loader, "fScannerHosts");
+            fDurability = getDurability(loader, "fDurability", durability);
             // BRP PROPERTIES
             brpTempFile = loader.getProperty("brpTempFile");
             brpDatFile = repoDir + loader.getProperty("brpDatFile");
             brpEotFile = repoDir + loader.getProperty("brpEotFile");
             brpReportFile = repoDir + loader.getProperty("brpReportFile");
+            brpMaxRunVol = loader.getPropertyInt("brpMaxRunVol", 0);
         } catch (RuntimeException ex) {
             // Property value is missing from the file
             throw ex;
         }
     }
 
+    /**
+     * Gets an optional durability property.
+     *
+     * @throws RuntimeException if the value is not a durability mode
+     */
+    private Durability getDurability(PropertyLoader loader, String key, Durability defaultValue) throws RuntimeException {
+        String value = loader.getProperty(key, defaultValue.name());
+        Durability durability = EnumUtils.getEnumIgnoreCase(Durability.class, value);
+        if (durability == null) {
+            throw new RuntimeException(MessageFormat.format("Value [{0}] is not valid for the property [{1}] in file [{2}]", value, key, filename));
+        }
+        return durability;
+    }
+
+    /**
+     * Gets the optional list of report formats, separated by commas.
+     *
+     * @throws RuntimeException if a value is not a report format
+     */
+    private Set<ReportFormat> getReportFormats(PropertyLoader loader, String key) throws RuntimeException {
+        Set<ReportFormat> formats = EnumSet.noneOf(ReportFormat.class);
+        for (String value : StringUtils.split(loader.getProperty(key, ReportFormat.PDF.name()), ", ")) {
+            ReportFormat format = EnumUtils.getEnumIgnoreCase(ReportFormat.class, value);
+            if (format == null) {
+                throw new RuntimeException(MessageFormat.format("Value [{0}] is not valid for the property [{1}] in file [{2}]", value, key, filename));
+            }
+            formats.add(format);
+        }
+        return formats;
+    }
+
+    /**
+     * Gets an optional list of values, separated by commas.
+     */
+    private List<String> getList(PropertyLoader loader, String key) {
+        return Arrays.asList(StringUtils.split(loader.getProperty(key, ""), ", "));
+    }
+
     /**
      * Morriston site configuration.
      *
@@ -131,6 +217,16 @@ public class AppConfig {
                          .EotFile(mEotFile)
                          .Report(mReportFile)
                          .TempFile(mTempFile)
+                         .MaxRunVol(mMaxRunVol)
+                         .SubmitThreads(submitThreads)
+                         .ScannerPort(mScannerPort)
+                         .ScannerBindAddress(scannerBindAddress)
+                         .ScannerHosts(mScannerHosts)
+                         .MaxScannerConnections(scannerConnections)
+                         .Durability(mDurability)
+                         .GroupCommitMillis(groupCommitMillis)
+                         .GroupCommitRecords(groupCommitRecords)
+                         .ReportFormats(reportFormats)
                          .build();
     }
 
@@ -148,6 +244,16 @@ public class AppConfig {
                          .EotFile(fEotFile)
                          .Report(fReportFile)
                          .TempFile(fTempFile)
+                         .MaxRunVol(fMaxRunVol)
+                         .SubmitThreads(submitThreads)
+                         .ScannerPort(fScannerPort)
+                         .ScannerBindAddress(scannerBindAddress)
+                         .ScannerHosts(fScannerHosts)
+                         .MaxScannerConnections(scannerConnections)
+                         .Durability(fDurability)
+                         .GroupCommitMillis(groupCommitMillis)
+                         .GroupCommitRecords(groupCommitRecords)
+                         .ReportFormats(reportFormats)
                          .build();
     }
 
@@ -160,6 +266,8 @@ public class AppConfig {
                          .EotFile(brpEotFile)
                          .Report(brpReportFile)
                          .TempFile(brpTempFile)
+                         .MaxRunVol(brpMaxRunVol)
+                         .SubmitThreads(submitThreads)
                          .build();
     }
 }
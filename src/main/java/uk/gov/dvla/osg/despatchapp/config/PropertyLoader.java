@@ -47,6 +47,17 @@ public class PropertyLoader {
         
         return properties.getProperty(key);
     }
+
+    /**
+     * Gets the optional string property matching the provided key.
+     *
+     * @param key the key to match
+     * @param defaultValue the value to use when the key is not present in the configuration file
+     * @return the property for the key, or the default value
+     */
+    public String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue).trim();
+    }
     
     /**
      * Gets the int property matching the provided key.
@@ -67,4 +78,20 @@ public class PropertyLoader {
         
         return Integer.parseInt(value);
     }
+
+    /**
+     * Gets the optional int property matching the provided key.
+     *
+     * @param key the key to match
+     * @param defaultValue the value to use when the key is not present in the configuration file
+     * @return the property for the key, or the default value
+     * @throws RuntimeException if the value is not a valid integer
+     */
+    public int getPropertyInt(String key, int defaultValue) throws RuntimeException {
+        if (!properties.containsKey(key)) {
+            return defaultValue;
+        }
+        
+        return getPropertyInt(key);
+    }
 }
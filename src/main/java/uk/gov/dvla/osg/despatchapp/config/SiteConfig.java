@@ -1,6 +1,14 @@
 package uk.gov.dvla.osg.despatchapp.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.gov.dvla.osg.despatchapp.models.Durability;
 import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+import uk.gov.dvla.osg.despatchapp.models.ReportFormat;
 
 public class SiteConfig {
 
@@ -10,6 +18,16 @@ public class SiteConfig {
     private String report;
     private String repository;
     private int retentionPeriod;
+    private int maxRunVol;
+    private int submitThreads;
+    private int scannerPort;
+    private String scannerBindAddress;
+    private List<String> scannerHosts;
+    private int maxScannerConnections;
+    private Durability durability;
+    private int groupCommitMillis;
+    private int groupCommitRecords;
+    private Set<ReportFormat> reportFormats;
     private PrintSite site;
 
 
@@ -21,6 +39,17 @@ public class SiteConfig {
         this.report = builder.innerReport;
         this.repository = builder.innerRepository;
         this.retentionPeriod = builder.innerRetentionPeriod;
+        this.maxRunVol = builder.innerMaxRunVol;
+        this.submitThreads = builder.innerSubmitThreads;
+        this.scannerPort = builder.innerScannerPort;
+        this.scannerBindAddress = builder.innerScannerBindAddress;
+        this.scannerHosts = Collections.unmodifiableList(new ArrayList<>(builder.innerScannerHosts));
+        this.maxScannerConnections = builder.innerMaxScannerConnections;
+        this.durability = builder.innerDurability;
+        this.groupCommitMillis = builder.innerGroupCommitMillis;
+        this.groupCommitRecords = builder.innerGroupCommitRecords;
+        this.reportFormats = Collections.unmodifiableSet(builder.innerReportFormats.isEmpty()
+                ? EnumSet.noneOf(ReportFormat.class) : EnumSet.copyOf(builder.innerReportFormats));
     }
 
     public String report() {
@@ -47,6 +76,98 @@ public class SiteConfig {
         return this.retentionPeriod;
     }
     
+    /**
+     * Maximum number of Job IDs in a single DAT file. Larger batches are split into
+     * several DAT/EOT pairs.
+     *
+     * @return the maximum RUNVOL, or 0 if batches are never split
+     */
+    public int maxRunVol() {
+        return this.maxRunVol;
+    }
+
+    /**
+     * Maximum number of DAT/EOT pairs sent to RPD at the same time.
+     *
+     * @return the number of submission threads
+     */
+    public int submitThreads() {
+        return this.submitThreads;
+    }
+
+    /**
+     * TCP port that network scanners send barcodes to for this site.
+     *
+     * @return the port, or 0 if the site has no network scanners
+     */
+    public int scannerPort() {
+        return this.scannerPort;
+    }
+
+    /**
+     * Local address that network scanners connect to.
+     *
+     * @return the host name or IP address, or empty to listen on the loopback address only
+     */
+    public String scannerBindAddress() {
+        return this.scannerBindAddress;
+    }
+
+    /**
+     * Network scanners allowed to connect. Connections from any other address are closed.
+     *
+     * @return the host names or IP addresses, or empty to allow only this PC
+     */
+    public List<String> scannerHosts() {
+        return this.scannerHosts;
+    }
+
+    /**
+     * Maximum number of network scanners connected at the same time.
+     *
+     * @return the number of connections
+     */
+    public int maxScannerConnections() {
+        return this.maxScannerConnections;
+    }
+
+    /**
+     * How far a scan is saved to the temp file before it is shown as scanned.
+     *
+     * @return the durability mode
+     */
+    public Durability durability() {
+        return this.durability;
+    }
+
+    /**
+     * Longest time a scan waits for a group commit, in {@link Durability#GROUP_COMMIT} mode.
+     *
+     * @return the wait in milliseconds
+     */
+    public int groupCommitMillis() {
+        return this.groupCommitMillis;
+    }
+
+    /**
+     * Number of waiting scans that forces a group commit straight away, in
+     * {@link Durability#GROUP_COMMIT} mode.
+     *
+     * @return the number of scans
+     */
+    public int groupCommitRecords() {
+        return this.groupCommitRecords;
+    }
+
+    /**
+     * Files written for each despatch report, in a single pass over the batch.
+     *
+     * @return the report formats
+     */
+    public Set<ReportFormat> reportFormats() {
+        return this.reportFormats;
+    }
+
     public PrintSite site() {
         return this.site;
     }
@@ -70,6 +191,16 @@ public class SiteConfig {
         private String innerEotFile;
         private String innerDatFile;
         private String innerReport;
+        private int innerMaxRunVol;
+        private int innerSubmitThreads = 1;
+        private int innerScannerPort;
+        private String innerScannerBindAddress = "";
+        private List<String> innerScannerHosts = Collections.emptyList();
+        private int innerMaxScannerConnections = 8;
+        private Durability innerDurability = Durability.OS_BUFFERED;
+        private int innerGroupCommitMillis = 20;
+        private int innerGroupCommitRecords = 100;
+        private Set<ReportFormat> innerReportFormats = EnumSet.of(ReportFormat.PDF);
 
         private Builder() {
         }
@@ -109,6 +240,56 @@ public class SiteConfig {
             return this;
         }
 
+        public Builder MaxRunVol(int maxRunVol) {
+            this.innerMaxRunVol = maxRunVol;
+            return this;
+        }
+
+        public Builder SubmitThreads(int submitThreads) {
+            this.innerSubmitThreads = submitThreads;
+            return this;
+        }
+
+        public Builder ScannerPort(int scannerPort) {
+            this.innerScannerPort = scannerPort;
+            return this;
+        }
+
+        public Builder ScannerBindAddress(String scannerBindAddress) {
+            this.innerScannerBindAddress = scannerBindAddress;
+            return this;
+        }
+
+        public Builder ScannerHosts(List<String> scannerHosts) {
+            this.innerScannerHosts = scannerHosts;
+            return this;
+        }
+
+        public Builder MaxScannerConnections(int maxScannerConnections) {
+            this.innerMaxScannerConnections = maxScannerConnections;
+            return this;
+        }
+
+        public Builder Durability(Durability durability) {
+            this.innerDurability = durability;
+            return this;
+        }
+
+        public Builder GroupCommitMillis(int groupCommitMillis) {
+            this.innerGroupCommitMillis = groupCommitMillis;
+            return this;
+        }
+
+        public Builder GroupCommitRecords(int groupCommitRecords) {
+            this.innerGroupCommitRecords = groupCommitRecords;
+            return this;
+        }
+
+        public Builder ReportFormats(Set<ReportFormat> reportFormats) {
+            this.innerReportFormats = reportFormats;
+            return this;
+        }
+
         public SiteConfig build() {
             return new SiteConfig(this);
         }
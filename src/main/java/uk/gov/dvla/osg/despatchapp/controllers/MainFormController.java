@@ -1,15 +1,15 @@
 package uk.gov.dvla.osg.despatchapp.controllers;
 
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
 
 import org.apache.commons.lang3.EnumUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -18,10 +18,13 @@ import javafx.scene.control.*;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
-import uk.gov.dvla.osg.despatchapp.data.FileManager;
-import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
 import uk.gov.dvla.osg.despatchapp.models.PrintSite;
-import uk.gov.dvla.osg.despatchapp.utilities.BarcodeReader;
+import uk.gov.dvla.osg.despatchapp.models.ScanResult;
+import uk.gov.dvla.osg.despatchapp.report.ReportCache;
+import uk.gov.dvla.osg.despatchapp.utilities.NumericBarcodeReader;
 import uk.gov.dvla.osg.despatchapp.utilities.FxUtils;
 import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
 import uk.gov.dvla.osg.despatchapp.views.LoginGui;
@@ -29,8 +32,9 @@ import uk.gov.dvla.osg.despatchapp.views.LoginGui;
 public class MainFormController {
 
     static final Logger LOGGER = LogManager.getLogger();
+    // From a barcode being read to its Job ID being in the temp file
+    private static final Histogram SCAN_TO_PERSIST = Metrics.timer("scan.persist");
 
-    private static final String EMPTY = "";
     private static final ObservableList<PrintSite> SITES = FXCollections.observableArrayList();
 
     @FXML ChoiceBox cbSite;
@@ -39,12 +43,12 @@ public class MainFormController {
     @FXML Label lblSite;
     @FXML Label lblItems;
     @FXML Button btnSubmit;
+    @FXML Button btnReprint;
 
-    ObservableList<JobId> model = FXCollections.observableArrayList();
-    BarcodeReader barcodeReader = new BarcodeReader();
-    RemoveItemController removeItemController;
-    SubmitFileController submitFileController;
-    FileManager fileManager;
+    // Sites opened so far, and the one shown in the form
+    final Map<PrintSite, SiteSession> sessions = new EnumMap<>(PrintSite.class);
+    SiteSession session;
+    NumericBarcodeReader barcodeReader = new NumericBarcodeReader();
 
     @FXML
     private void initialize() {
@@ -53,10 +57,38 @@ public class MainFormController {
         lvContent.setDisable(true);
         FxUtils.disableNode(btnSubmit);
         cbSite.getSelectionModel().selectedIndexProperty().addListener(new SiteListenerImplementation(this));
+    }
 
-        lvContent.setItems(model);
-        lvContent.setDisable(true);
-        lblItems.textProperty().bind(Bindings.concat("No. of items: ", Bindings.size((lvContent.getItems())).asString()));
+    /**
+     * Shows the list for a site and points the form at its session. The site's own
+     * submission, if one is running, is shown on the Submit button.
+     *
+     * @param session the session for the chosen site
+     */
+    void showSession(SiteSession session) {
+        this.session = session;
+        lvContent.setItems(session.model);
+        lvContent.setDisable(false);
+        lblItems.textProperty().bind(Bindings.concat("No. of items: ", session.model.countProperty().asString()));
+        FxUtils.enableNode(btnSubmit);
+        btnReprint.setDisable(false);
+        showSubmitButton();
+    }
+
+    /**
+     * Shows Cancel with the progress of the current site's submission while one is
+     * running, otherwise Submit.
+     */
+    private void showSubmitButton() {
+        if (session.submitTask == null) {
+            btnSubmit.setText("Submit");
+            btnSubmit.setGraphic(null);
+            return;
+        }
+        ProgressIndicator progress = new ProgressIndicator();
+        progress.progressProperty().bind(session.submitTask.progressProperty());
+        btnSubmit.setText("Cancel");
+        btnSubmit.setGraphic(progress);
     }
 
     /**
@@ -77,29 +109,39 @@ public class MainFormController {
         if (!barcodeReader.handle(event)) {
             return;
         }
-        // Check if input is a valid Job ID
-        String input = barcodeReader.getBarcode();
-        if (!JobId.isValid(input)) {
-            FxUtils.displayErrorMessage(lblError, "Whoops that wasn't a Job ID!");
-            return;
-        }
-        // Create JobId from input
-        JobId jid = JobId.newInstance(input);
-        // Check if ID has already been entered
-        if (model.contains(jid)) {
-            FxUtils.displayErrorMessage(lblError, "Job ID already entered!");
-            return;
+        long accepted = System.nanoTime();
+        // Check the Job ID, then add it to the file and the list
+        ScanResult result = session.accept(barcodeReader.isJobId() ? barcodeReader.getJobId() : -1);
+        if (result.isAdded()) {
+            SCAN_TO_PERSIST.recordSince(accepted);
         }
-        // Add it to the file
-        try {
-            fileManager.append(jid.toString());
-        } catch (IOException ex) {
-            LOGGER.error(ex);
-            ErrMsgDialog.show("File write error", "Unable to write to file", String.format("Please request read/write access to [%s]", fileManager.getTempFileDirectory()));
-            return;
+        scanned(session, result);
+    }
+
+    /**
+     * Tells the user about a scan that was not added, or was added with a warning. Scans from network scanners can be
+     * for a site other than the one shown.
+     *
+     * @param site the session the scan was for
+     * @param result the result of the scan
+     */
+    void scanned(SiteSession site, ScanResult result) {
+        switch (result) {
+        case NOT_A_JOB_ID:
+            FxUtils.displayErrorMessage(lblError, forSite(site, "Whoops that wasn't a Job ID!"));
+            break;
+        case DUPLICATE:
+            FxUtils.displayErrorMessage(lblError, forSite(site, "Job ID already entered!"));
+            break;
+        case ALREADY_DESPATCHED:
+            FxUtils.displayErrorMessage(lblError, forSite(site, "Job ID was already despatched, check before sending again!"));
+            break;
+        case WRITE_FAILED:
+            ErrMsgDialog.show("File write error", "Unable to write to file", String.format("Please request read/write access to [%s]", site.fileManager.getTempFileDirectory()));
+            break;
+        default:
+            break;
         }
-        // All good so add it to the list
-        model.add(jid);
     }
 
     /**
@@ -110,11 +152,11 @@ public class MainFormController {
      */
     @FXML
     private void lvKeyPressed(KeyEvent event) {
-        if (!FxUtils.deleteKeyPressed(event) || model.isEmpty()) {
+        if (!FxUtils.deleteKeyPressed(event) || session.model.isEmpty()) {
             return;
         }
 
-        removeItemController.remove(lvContent);
+        session.removeItemController.remove(lvContent);
     }
 
     /**
@@ -125,55 +167,150 @@ public class MainFormController {
      */
     @FXML
     private void mousePressed(MouseEvent e) {
-        if (!model.isEmpty() && e.getButton() == MouseButton.SECONDARY) {
-            removeItemController.remove(lvContent);
+        if (!session.model.isEmpty() && e.getButton() == MouseButton.SECONDARY) {
+            session.removeItemController.remove(lvContent);
         }
     }
 
     /**
-     * Click event for the Submit button.
+     * Click event for the Submit button. The scanned items are frozen as a batch and
+     * sent to RPD on a background thread, so scanning can continue into a new batch
+     * while the upload runs. While a batch is being sent the button cancels it. Each
+     * site submits on its own thread, so other sites can be scanned and submitted
+     * meanwhile.
      */
     @FXML
     private void submit() {
+        SiteSession site = session;
+        // Button cancels the running submission
+        if (site.submitTask != null) {
+            site.submitTask.requestCancel();
+            return;
+        }
         // Display message if no items were added
-        if (model.isEmpty()) {
+        site.model.flush();
+        if (site.model.isEmpty()) {
             FxUtils.displayErrorMessage(lblError, "No items to send.");
             return;
         }
-        // Add progress indicator to button
-        Platform.runLater(() -> {
-            btnSubmit.setText(EMPTY);
-            btnSubmit.setGraphic(new ProgressIndicator());
+        // Login user
+        LoginGui.newInstance();
+        if (!site.submitFileController.canSubmit()) {
+            FxUtils.displayErrorMessage(lblError, "Unable to send files to RPD!");
+            return;
+        }
+        // Freeze the scanned items, the Job IDs stay in the index until the batch is sent
+        Batch batch;
+        try {
+            batch = site.fileManager.freeze();
+        } catch (IOException ex) {
+            LOGGER.error(ex);
+            ErrMsgDialog.show("File write error", "Unable to save the batch for submission", String.format("Please request read/write access to [%s]", site.fileManager.getTempFileDirectory()));
+            return;
+        }
+        site.model.reload();
+
+        SubmitTask task = new SubmitTask(site.submitFileController, batch);
+        site.submitTask = task;
+        task.messageProperty().addListener((observable, oldMsg, msg) -> {
+            if (session == site) {
+                FxUtils.displayStatusMessage(lblError, msg);
+            }
+        });
+        task.setOnSucceeded(e -> submitFinished(site, task.getValue()));
+        task.setOnFailed(e -> {
+            LOGGER.error("Submission failed", task.getException());
+            submitFinished(site, false);
         });
-        
-        // Queue on JavaFX thread and wait for completion
-        final CountDownLatch doneLatch = new CountDownLatch(1);
+        // Add progress indicator to button
+        showSubmitButton();
+
+        Thread thread = new Thread(task, "submit-" + site.site.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Click event for the Reprint button. Lists the most recent reports for the current
+     * site and opens the chosen one again from the report cache.
+     */
+    @FXML
+    private void reprint() {
+        List<ReportCache.Entry> reports = session.submitFileController.getReportWorker().recentReports();
+        if (reports.isEmpty()) {
+            FxUtils.displayErrorMessage(lblError, "No reports to reprint.");
+            return;
+        }
+        ChoiceDialog<ReportCache.Entry> dialog = new ChoiceDialog<>(reports.get(0), reports);
+        dialog.setTitle("Reprint Report");
+        dialog.setHeaderText("Recent reports for " + session.site);
+        dialog.setContentText("Batch:");
+        Optional<ReportCache.Entry> choice = dialog.showAndWait();
+        choice.ifPresent(session.submitFileController.getReportWorker()::reprint);
+    }
+
+    /**
+     * Runs on the JavaFX thread once the background submission ends. A cancelled batch
+     * is returned to the temp file and the list. A batch that failed stays in the outbox
+     * and is retried in the background, its Job IDs are kept in the index so they cannot
+     * be scanned into another batch meanwhile. The site may no longer be the one shown.
+     *
+     * @param site the session the batch was submitted from
+     * @param sent true, if the batch was sent to RPD
+     */
+    private void submitFinished(SiteSession site, boolean sent) {
+        boolean cancelled = site.submitTask.wasCancelled();
+        Batch batch = site.submitTask.getBatch();
+        long[] sentIds = site.submitTask.getSentIds();
+        site.submitTask = null;
+
+        if (sent) {
+            for (long id : sentIds) {
+                site.index.remove(id);
+            }
+            String successMsg = batch.size() == 1 ? "1 item sent to RPD" : batch.size() + " items sent to RPD!";
+            FxUtils.displaySuccessMessage(lblError, forSite(site, successMsg));
+        } else if (cancelled) {
             try {
-                // Login user
-                LoginGui.newInstance();
-                // Convert model to list of strings
-                List<String> jobIdList = model.stream().map(JobId::getJobId).collect(Collectors.toList());
-                // Send the data to RPD
-                if (submitFileController.trySubmit(jobIdList)) {
-                    String successMsg = jobIdList.size() == 1 ? "1 item sent to RPD" : jobIdList.size() + " items sent to RPD!";
-                    FxUtils.displaySuccessMessage(lblError, successMsg);
-                    model.clear();
-                } else {
-                    FxUtils.displayErrorMessage(lblError, "Unable to send files to RPD!");
-                }
-            } finally {
-                doneLatch.countDown();
+                // Nothing was sent before the cancel was honoured, the Job IDs are still in the index
+                site.fileManager.restore(batch);
+                site.model.reload();
+            } catch (IOException ex) {
+                LOGGER.error("Unable to return cancelled batch to the temp file", ex);
+                ErrMsgDialog.show("File write error", "Unable to return the cancelled items to the temp file", "The items will be sent in the background.");
+                site.outboxRetrier.schedule(batch);
             }
-
-        try {
-            doneLatch.await();
-        } catch (InterruptedException e) {
-            LOGGER.fatal(e.getMessage());
+            FxUtils.displayErrorMessage(lblError, forSite(site, "Submission cancelled."));
+        } else {
+            site.outboxRetrier.schedule(batch);
+            FxUtils.displayErrorMessage(lblError, forSite(site, "Unable to send files to RPD! Retrying in the background."));
         }
 
         // Reset button
-        btnSubmit.setText("Submit");
-        btnSubmit.setGraphic(null);
+        if (session == site) {
+            showSubmitButton();
+        }
+    }
+
+    /**
+     * Runs on the JavaFX thread when a batch is sent by a site's {@link OutboxRetrier}.
+     *
+     * @param site the session the batch belongs to
+     * @param batch the batch
+     * @param ids the Job IDs in the batch
+     */
+    void batchSent(SiteSession site, Batch batch, long[] ids) {
+        for (long id : ids) {
+            site.index.remove(id);
+        }
+        FxUtils.displaySuccessMessage(lblError, forSite(site, String.format("Earlier batch %s sent to RPD", batch.getTimeStamp())));
+    }
+
+    /**
+     * Names the site in a message about a site other than the one shown.
+     */
+    private String forSite(SiteSession site, String msg) {
+        return session == site ? msg : site.site + ": " + msg;
     }
 
     /**
@@ -181,10 +318,7 @@ public class MainFormController {
      * OnClose event set in the Main class.
      */
     public void shutdown() {
-        if (fileManager == null) {
-            return;
-        }
-        fileManager.unlockTempFile();
+        sessions.values().forEach(SiteSession::close);
     }
 
 }
@@ -0,0 +1,117 @@
+package uk.gov.dvla.osg.despatchapp.controllers;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.data.SubmitListener;
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
+
+/**
+ * Retries batches in the outbox that could not be sent, on a background thread. The
+ * delay between attempts doubles after each failure, up to a maximum. Each attempt
+ * carries on from the last phase the batch completed, and errors are logged rather
+ * than shown, as nobody is waiting on the result.
+ */
+public class OutboxRetrier {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    private static final long INITIAL_DELAY_SECONDS = 30;
+    private static final long MAX_DELAY_SECONDS = 30 * 60;
+
+    private final SubmitFileController submitFileController;
+    private final BiConsumer<Batch, long[]> onSent;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "outbox-retrier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Batches waiting for their next attempt
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final SubmitListener listener = new SubmitListener() {
+        @Override
+        public boolean enterStage(SubmitStage stage) {
+            LOGGER.debug("Retry - {}", stage);
+            return true;
+        }
+
+        @Override
+        public void showError(String code, String message, String action) {
+            LOGGER.warn("Retry failed - {}: {}", code, message);
+        }
+
+        @Override
+        public void showError(String code, String message) {
+            LOGGER.warn("Retry failed - {}: {}", code, message);
+        }
+    };
+
+    /**
+     * Instantiates a new retrier.
+     *
+     * @param submitFileController the controller that sends the batches
+     * @param onSent called on the JavaFX thread with each batch that is sent, and its Job IDs
+     */
+    public OutboxRetrier(SubmitFileController submitFileController, BiConsumer<Batch, long[]> onSent) {
+        this.submitFileController = submitFileController;
+        this.onSent = onSent;
+    }
+
+    /**
+     * Schedules a batch to be retried after the initial delay.
+     *
+     * @param batch the batch
+     */
+    public void schedule(Batch batch) {
+        schedule(batch, INITIAL_DELAY_SECONDS);
+    }
+
+    private void schedule(Batch batch, long delaySeconds) {
+        LOGGER.info("Batch {} will be retried in {} seconds", batch.getTimeStamp(), delaySeconds);
+        pending.incrementAndGet();
+        scheduler.schedule(() -> retry(batch, delaySeconds), delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void retry(Batch batch, long delaySeconds) {
+        pending.decrementAndGet();
+        // The batch can only be sent once a user has logged in
+        if (submitFileController.canSubmit()) {
+            try {
+                long[] ids = batch.getNumericIds();
+                if (submitFileController.trySubmit(batch, listener)) {
+                    LOGGER.info("Batch {} sent on retry", batch.getTimeStamp());
+                    Platform.runLater(() -> onSent.accept(batch, ids));
+                    return;
+                }
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Retry of batch {} failed, {}", batch.getTimeStamp(), ex.getMessage());
+            }
+        }
+        schedule(batch, Math.min(delaySeconds * 2, MAX_DELAY_SECONDS));
+    }
+
+    /**
+     * Gets the number of batches waiting to be retried.
+     *
+     * @return the number of batches
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops retrying. Batches stay in the outbox and are picked up on the next start.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -7,8 +7,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javafx.scene.control.*;
-import uk.gov.dvla.osg.despatchapp.data.FileManager;
+import uk.gov.dvla.osg.despatchapp.data.JournalList;
 import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
 import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
 
 public class RemoveItemController {
@@ -16,10 +17,12 @@ public class RemoveItemController {
     static final Logger LOG = LogManager.getLogger();
     private static final Dialog<ButtonType> DIALOG = new Dialog<>();
 
-    private FileManager fileManager;
+    private JournalList items;
+    private JobIdIndex index;
 
-    public RemoveItemController(FileManager manager) {
-        this.fileManager = manager;
+    public RemoveItemController(JournalList items, JobIdIndex index) {
+        this.items = items;
+        this.index = index;
     }
 
     /**
@@ -29,6 +32,7 @@ public class RemoveItemController {
      * @param listView the list view
      */
     public void remove(ListView listView) {
+        int selectedIndex = listView.getSelectionModel().getSelectedIndex();
         JobId selectedItem = (JobId) listView.getSelectionModel().getSelectedItem();
         String id = selectedItem.getJobId();
         // display dialog and wait for a button to be clicked
@@ -39,18 +43,15 @@ public class RemoveItemController {
             return;
         }
         
-        // remove line from temp file
+        // remove line from temp file and the list
         try {
-            fileManager.remove(selectedItem.toString());
+            items.removeAt(selectedIndex);
         } catch (IOException ex) {
             LOG.error("Unable to remove the selected item from data file.", ex);
             ErrMsgDialog.show("Remove JobId", "Unable to remove the selected item from data file.");
             return;
         }
-        
-        // remove item from list
-        int index = listView.getSelectionModel().getSelectedIndex();
-        listView.getItems().remove(index);
+        this.index.remove(selectedItem.getNumericId());
     }
 
     private static Optional<ButtonType> showDialog(String str) {
@@ -2,6 +2,7 @@ package uk.gov.dvla.osg.despatchapp.controllers;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,10 +10,10 @@ import org.apache.logging.log4j.Logger;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
 import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
 import uk.gov.dvla.osg.despatchapp.config.SiteConfigFactory;
-import uk.gov.dvla.osg.despatchapp.data.FileManager;
-import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.data.SiteInUseException;
 import uk.gov.dvla.osg.despatchapp.models.PrintSite;
 import uk.gov.dvla.osg.despatchapp.utilities.FxUtils;
 import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
@@ -27,53 +28,118 @@ public final class SiteListenerImplementation implements ChangeListener {
         this.controller = controller;
     }
     
+    /**
+     * Switches the form to the chosen site. The site is opened the first time it is
+     * chosen, after that its session is shown as it was left. A site is opened on a
+     * background thread, with the form disabled until it is ready. If a site cannot be
+     * opened the form goes back to the previous site, or the application closes if no
+     * site has been opened yet.
+     */
     @Override
     public void changed(ObservableValue observable, Object oldValue, Object newValue) {
-        controller.cbSite.getSelectionModel().select((int) newValue);
-        PrintSite chosenSite = (PrintSite) controller.cbSite.getSelectionModel().getSelectedItem();
-        SiteConfig config = SiteConfigFactory.get(chosenSite);
-        controller.lblSite.setText(chosenSite.toString());
-        FxUtils.swapControls(controller.cbSite, controller.lblSite);
-        controller.lvContent.setDisable(false);
-        FxUtils.enableNode(controller.btnSubmit);
-        controller.lblSite.requestFocus();
-        FileManager fileManager = new FileManager(config);
-        controller.fileManager = fileManager;
-        controller.removeItemController = new RemoveItemController(fileManager);
-        controller.submitFileController = new SubmitFileController(config, fileManager);
-        
-        if (!fileManager.userHasRepoAccess()) {
-            LOGGER.error("Unable to write to the repository directory");
-            String repoDir = config.repository();
-            FxUtils.runAndWait(() ->  {
-                ErrMsgDialog.show("Folder Permissions", "Please check you have read,write access to " + repoDir);
-            });
-            Platform.exit();
-            System.exit(1);
+        int selected = (int) newValue;
+        if (selected < 0) {
+            return;
+        }
+        PrintSite chosenSite = (PrintSite) controller.cbSite.getItems().get(selected);
+        SiteSession session = controller.sessions.get(chosenSite);
+        if (session != null) {
+            controller.showSession(session);
+            controller.lvContent.requestFocus();
+            return;
+        }
+        long chosenAt = System.nanoTime();
+        controller.cbSite.setDisable(true);
+        controller.lvContent.setDisable(true);
+        FxUtils.displayStatusMessage(controller.lblError, "Opening " + chosenSite + "...");
+
+        Task<SiteSession> task = new Task<SiteSession>() {
+            @Override
+            protected SiteSession call() {
+                return open(chosenSite);
+            }
+        };
+        task.setOnSucceeded(e -> opened(chosenSite, task.getValue(), chosenAt));
+        task.setOnFailed(e -> {
+            LOGGER.error("Unable to open " + chosenSite, task.getException());
+            ErrMsgDialog.show("Application Start", "Unable to open " + chosenSite, "Please check the application log.");
+            opened(chosenSite, null, chosenAt);
+        });
+        Thread thread = new Thread(task, "open-" + chosenSite.name());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Shows a site once it has been opened, on the JavaFX thread.
+     *
+     * @param chosenSite the site
+     * @param session the session, or null if the site could not be opened
+     * @param chosenAt when the site was chosen, from System.nanoTime()
+     */
+    private void opened(PrintSite chosenSite, SiteSession session, long chosenAt) {
+        controller.cbSite.setDisable(false);
+        FxUtils.displayStatusMessage(controller.lblError, "");
+        if (session == null) {
+            if (controller.session == null) {
+                Platform.exit();
+                System.exit(1);
+            }
+            controller.cbSite.getSelectionModel().select(controller.session.site);
+            return;
         }
-        
+        controller.sessions.put(chosenSite, session);
+        session.model.reload();
+        session.startScannerFeed();
+        controller.showSession(session);
+        controller.lvContent.requestFocus();
+        LOGGER.info("{} ready to scan {} ms after it was chosen, with {} items", chosenSite,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - chosenAt), session.model.size());
+    }
+
+    /**
+     * Opens the session for a site, telling the user if it cannot be opened. A session
+     * that is not opened is closed again, which only releases the site's lock if this
+     * application took it.
+     *
+     * @param chosenSite the site
+     * @return the session, or null if the site could not be opened
+     */
+    private SiteSession open(PrintSite chosenSite) {
+        SiteConfig config = SiteConfigFactory.get(chosenSite);
+        SiteSession session = new SiteSession(chosenSite, config, controller);
+        boolean opened = false;
         try {
-            //fileManager.read().forEach(line -> controller.model.add(JobId.fromString(line)));
-            for (String line : fileManager.read()) {
-                JobId jobId = JobId.fromString(line);
-                controller.model.add(jobId);
+            if (!session.fileManager.userHasRepoAccess()) {
+                LOGGER.error("Unable to write to the repository directory");
+                String repoDir = config.repository();
+                FxUtils.runAndWait(() ->  {
+                    ErrMsgDialog.show("Folder Permissions", "Please check you have read,write access to " + repoDir);
+                });
+                return null;
             }
+
+            session.open();
+            opened = true;
+            return session;
+        } catch (SiteInUseException ex) {
+            LOGGER.error(ex.getMessage());
+            FxUtils.runAndWait(() -> {
+                ErrMsgDialog.show("Application Start", "Application is already in use at this site - " + config.site(), "Please close the open application before continuing.");
+            });
+            return null;
         } catch (IOException ex) {
             LOGGER.error("Unable to read from temp data file {}", ex.getMessage());
             String tempDir = new File(config.tempFile()).getParent();
             FxUtils.runAndWait(() -> {
                 ErrMsgDialog.show("Folder Permissions", "Please check you have read,write access to " + tempDir);
             });
-            Platform.exit();
-            System.exit(1);
-        } catch (RuntimeException ex) {
-            LOGGER.error(ex);
-            FxUtils.runAndWait(() -> {
-                ErrMsgDialog.show("Application Start", "Application is already in use at this site - " + config.site(), "Please close the open application before continuing.");;
-            });
-
-            Platform.exit();
-            System.exit(1);
+            return null;
+        } finally {
+            if (!opened) {
+                session.close();
+            }
         }
     }
-}
\ No newline at end of file
+
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package uk.gov.dvla.osg.despatchapp.controllers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.application.Platform;
+import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.data.FileManager;
+import uk.gov.dvla.osg.despatchapp.data.JournalList;
+import uk.gov.dvla.osg.despatchapp.data.SiteInUseException;
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
+import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+import uk.gov.dvla.osg.despatchapp.models.ScanResult;
+import uk.gov.dvla.osg.despatchapp.utilities.DayArchiver;
+import uk.gov.dvla.osg.despatchapp.utilities.RepositoryLayout;
+import uk.gov.dvla.osg.despatchapp.utilities.RetentionSweeper;
+import uk.gov.dvla.osg.despatchapp.utilities.ScannerFeed;
+import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
+
+/**
+ * Everything held for one print site while the application is open: its journal, the
+ * scanned items and their index, and its submission worker. The scanned items are read
+ * from the journal as they are shown, only the index holds every Job ID in memory. Sessions are opened the
+ * first time a site is chosen and kept until the application closes, so switching
+ * between sites does not read from disk again.
+ * <p>
+ * Each site has its own journal, and the journal's lock covers only that site, so
+ * submitting one site's batch never holds up scanning at another. The list and index
+ * are only changed on the JavaFX thread.
+ * <p>
+ * Scans come from the keyboard wedge scanner while the site is shown, and from any
+ * network scanners set up for the site at all times. Both go through {@link #accept(long)}.
+ */
+class SiteSession {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    // From a network scanner's barcode arriving to its Job ID being in the temp file
+    private static final Histogram FEED_TO_PERSIST = Metrics.timer("feed.persist");
+
+    final PrintSite site;
+    final SiteConfig config;
+    final FileManager fileManager;
+    final JournalList model;
+    // Numeric Job IDs in the model, kept in step with it for duplicate checks
+    final JobIdIndex index = new JobIdIndex();
+    final RemoveItemController removeItemController;
+    final SubmitFileController submitFileController;
+    final OutboxRetrier outboxRetrier;
+    // Told of each network scan, to show its result
+    private final BiConsumer<SiteSession, ScanResult> onFeedScan;
+    private ScannerFeed scannerFeed;
+    SubmitTask submitTask;
+
+    SiteSession(PrintSite site, SiteConfig config, MainFormController controller) {
+        this.site = site;
+        this.config = config;
+        fileManager = new FileManager(config);
+        model = fileManager.getItems();
+        removeItemController = new RemoveItemController(model, index);
+        submitFileController = new SubmitFileController(config, fileManager);
+        outboxRetrier = new OutboxRetrier(submitFileController, (batch, ids) -> controller.batchSent(this, batch, ids));
+        onFeedScan = controller::scanned;
+    }
+
+    /**
+     * Reads the site's temp file into the index, and schedules any batches left in the
+     * outbox to be sent. Runs on a background thread, the list is loaded afterwards on
+     * the JavaFX thread. The repository sweeps and the site's gauges are only started
+     * once the site is open, so a session that fails to open leaves nothing running
+     * after {@link #close()}.
+     *
+     * @throws SiteInUseException Application is in use by another user
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void open() throws IOException {
+        long[] ids = fileManager.read();
+        index.addAll(ids);
+        // Batches left in the outbox are sent in the background
+        for (Batch batch : fileManager.getPendingBatches()) {
+            for (long id : batch.getNumericIds()) {
+                index.add(id);
+            }
+            outboxRetrier.schedule(batch);
+        }
+        // Sites that share a repository share its sweep
+        RetentionSweeper.schedule(Arrays.asList(RepositoryLayout.root(config.datFile()), RepositoryLayout.root(config.eotFile()),
+                RepositoryLayout.root(config.report())), config.retentionPeriod());
+        DayArchiver.schedule(site.name(), Arrays.asList(config.datFile(), config.eotFile(), config.report()), config.retentionPeriod());
+        Metrics.gauge("outbox.pending." + site.name(), outboxRetrier::pending);
+        Metrics.gauge("reports.queued." + site.name(), submitFileController.getReportWorker()::queued);
+        LOGGER.info("Opened {} with {} items", site, ids.length);
+    }
+
+    /**
+     * Checks a scanned Job ID and, if it is not already in the list or an unsent batch,
+     * adds it to the list and temp file. A Job ID sent to RPD on an earlier batch is
+     * still added, as it may have been reprinted, but the operator is warned. Only
+     * called on the JavaFX thread.
+     *
+     * @param id the numeric Job ID, or -1 if the barcode was not a Job ID
+     * @return the result of the scan
+     */
+    ScanResult accept(long id) {
+        if (!JobId.isValid(id)) {
+            return ScanResult.NOT_A_JOB_ID;
+        }
+        if (index.contains(id)) {
+            return ScanResult.DUPLICATE;
+        }
+        try {
+            model.append(JobId.newInstance(id));
+        } catch (IOException ex) {
+            LOGGER.error(ex);
+            return ScanResult.WRITE_FAILED;
+        }
+        index.add(id);
+        LocalDate despatchedOn = fileManager.getDespatched().despatchedOn(id);
+        if (despatchedOn != null) {
+            LOGGER.warn("Job ID {} scanned at {} was already despatched on {}", id, site, despatchedOn);
+            return ScanResult.ALREADY_DESPATCHED;
+        }
+        return ScanResult.ADDED;
+    }
+
+    /**
+     * Starts listening for network scanners, if the site has any. Called on the JavaFX
+     * thread once the list has been loaded.
+     */
+    void startScannerFeed() {
+        if (config.scannerPort() <= 0 || scannerFeed != null) {
+            return;
+        }
+        try {
+            String bind = config.scannerBindAddress();
+            List<InetAddress> allowed = new ArrayList<>();
+            for (String host : config.scannerHosts()) {
+                allowed.add(InetAddress.getByName(host));
+            }
+            scannerFeed = new ScannerFeed(site.name(), bind.isEmpty() ? null : InetAddress.getByName(bind), config.scannerPort(),
+                    allowed, config.maxScannerConnections(), () -> Platform.runLater(this::drainScannerFeed));
+        } catch (IOException ex) {
+            LOGGER.error("Unable to listen for {} scanners on port {}, {}", site, config.scannerPort(), ex.getMessage());
+            ErrMsgDialog.show("Network Scanners", "Unable to listen for network scanners on port " + config.scannerPort(),
+                    "Scanning can continue with the scanner attached to this PC.");
+        }
+    }
+
+    /**
+     * Saves the barcodes waiting from network scanners, on the JavaFX thread.
+     */
+    private void drainScannerFeed() {
+        scannerFeed.drain(scan -> {
+            ScanResult result = accept(scan.getJobId());
+            scan.counted(result);
+            if (result.isAdded()) {
+                FEED_TO_PERSIST.recordSince(scan.getReceivedAt());
+            }
+            onFeedScan.accept(this, result);
+        });
+    }
+
+    /**
+     * Stops the scanner feed, retrier and report worker and releases the site's temp
+     * file.
+     */
+    void close() {
+        if (scannerFeed != null) {
+            scannerFeed.close();
+        }
+        outboxRetrier.shutdown();
+        submitFileController.getReportWorker().shutdown();
+        fileManager.close();
+    }
+}
@@ -1,15 +1,21 @@
 package uk.gov.dvla.osg.despatchapp.controllers;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
-import java.util.List;
+import java.nio.file.Paths;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.data.Batch.Phase;
 import uk.gov.dvla.osg.despatchapp.data.FileManager;
-import uk.gov.dvla.osg.despatchapp.report.Report;
-import uk.gov.dvla.osg.despatchapp.utilities.FileDeleter;
+import uk.gov.dvla.osg.despatchapp.data.SubmitListener;
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
+import uk.gov.dvla.osg.despatchapp.report.ReportCache;
+import uk.gov.dvla.osg.despatchapp.report.ReportWorker;
+import uk.gov.dvla.osg.despatchapp.utilities.RetentionSweeper;
 import uk.gov.dvla.osg.rpd.web.config.Session;
 
 public class SubmitFileController {
@@ -18,42 +24,73 @@ public class SubmitFileController {
     private static final boolean DEBUG_MODE = ManagementFactory.getRuntimeMXBean().getInputArguments().toString().indexOf("-agentlib:jdwp") > 0;
     
     private FileManager manager;
-    private String reportFile;
-    private String repository;
-    private int retentionPeriod;
+    private ReportWorker reportWorker;
     
     public SubmitFileController(SiteConfig config, FileManager fileManager) {
         this.manager = fileManager;
-        reportFile = config.report();
-        repository = config.repository();
-        retentionPeriod = config.retentionPeriod();
+        ReportCache cache = new ReportCache(Paths.get(config.repository(), "reports"), config.site().name());
+        reportWorker = new ReportWorker(config.report(), config.site().name(), config.reportFormats(), cache);
+    }
+
+    public ReportWorker getReportWorker() {
+        return reportWorker;
     }
     
+    /**
+     * Checks that the user logged in successfully, before a batch is frozen for submission.
+     *
+     * @return true, if a batch can be sent to RPD
+     */
+    public boolean canSubmit() {
+        return DEBUG_MODE || Session.getInstance().isLoggedIn();
+    }
+
     /**
      * Send DAT & EOT files to the RPD hot folder. A PDF report of the submitted data will be 
-     * displayed. DAT, EOT & PDF files older than the retention period will be removed.
+     * displayed once the report worker has written it, and the batch is removed from the
+     * outbox after that. Old DAT, EOT & PDF files are removed by the {@link RetentionSweeper}.
+     * A batch that was part way through is picked up from the last phase it completed.
+     * Runs on a background thread, so it must not update the GUI directly.
      *
-     * @param list the list of Job ID's (without a timestamp)
+     * @param batch the batch of Job ID's to send
+     * @param listener told as each stage starts, returns false to cancel the submission
      * @return true, if successfully sent to RPD
      */
-    public boolean trySubmit(List<String> list) {
-        if (!DEBUG_MODE) {
-            // Did user log in successfully?
-            if (!Session.getInstance().isLoggedIn()) {
-                return false;
-            }
+    public boolean trySubmit(Batch batch, SubmitListener listener) {
+        if (!DEBUG_MODE && batch.getPhase().compareTo(Phase.SENT) < 0) {
             // Send files and check that they sent successfully
-            if (!manager.trySendToRpd(list)) {
+            if (!manager.trySendToRpd(batch, listener)) {
                 return false;
             }
         }
 
-        // Write report and display to screen
-        Report.writePDFreport(list, reportFile);
-        // Delete report files older than retention period
-        FileDeleter.deleteFilesOlderThanNdays(repository, retentionPeriod);
-        
+        // Write report and display to screen, without waiting for it
+        if (batch.getPhase() != Phase.REPORTED) {
+            listener.enterStage(SubmitStage.REPORTING);
+            reportWorker.render(batch.getFile().toPath(), batch.getTimeStamp()).whenComplete((report, ex) -> {
+                if (ex != null) {
+                    LOGGER.error("Report for batch " + batch.getTimeStamp() + " failed", ex);
+                }
+                reported(batch);
+            });
+        } else {
+            manager.complete(batch);
+        }
         return true;
     }
+
+    /**
+     * Removes the batch from the outbox once its report has been written.
+     *
+     * @param batch the batch
+     */
+    private void reported(Batch batch) {
+        try {
+            batch.setPhase(Phase.REPORTED);
+        } catch (IOException ex) {
+            LOGGER.error("Unable to update batch {}, {}", batch.getTimeStamp(), ex.getMessage());
+        }
+        manager.complete(batch);
+    }
     
 }
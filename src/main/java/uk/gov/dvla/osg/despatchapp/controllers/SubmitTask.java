@@ -0,0 +1,89 @@
+package uk.gov.dvla.osg.despatchapp.controllers;
+
+import java.io.IOException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javafx.concurrent.Task;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
+
+/**
+ * Submits a frozen batch on a background thread, publishing the current stage as the
+ * task message and progress. Cancelling is a request that is honoured at the start of
+ * the next stage, and only while the DAT file has not been sent, so the task always
+ * completes with a result rather than being abandoned part way through.
+ */
+public class SubmitTask extends Task<Boolean> {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private final SubmitFileController submitFileController;
+    private final Batch batch;
+    private volatile boolean cancelRequested;
+    private volatile boolean stopped;
+    private volatile long[] sentIds = new long[0];
+
+    public SubmitTask(SubmitFileController submitFileController, Batch batch) {
+        this.submitFileController = submitFileController;
+        this.batch = batch;
+    }
+
+    @Override
+    protected Boolean call() {
+        // Read here so the GUI does not wait on the batch file, and before the batch is
+        // sent, as the report worker deletes the batch once the report is written
+        long[] ids = new long[0];
+        try {
+            ids = batch.getNumericIds();
+        } catch (IOException ex) {
+            LOGGER.error("Unable to read Job IDs of batch {}, {}", batch.getTimeStamp(), ex.getMessage());
+        }
+        boolean sent = submitFileController.trySubmit(batch, this::enterStage);
+        if (sent) {
+            sentIds = ids;
+        }
+        return sent;
+    }
+
+    /**
+     * Asks the submission to stop at the start of the next stage.
+     */
+    public void requestCancel() {
+        cancelRequested = true;
+        updateMessage("Cancelling...");
+    }
+
+    /**
+     * Checks if the submission stopped because it was cancelled.
+     *
+     * @return true, if the batch was not sent due to a cancel request
+     */
+    public boolean wasCancelled() {
+        return stopped;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    /**
+     * Gets the Job IDs of the batch once it has been sent.
+     *
+     * @return the Job IDs, empty if the batch was not sent
+     */
+    public long[] getSentIds() {
+        return sentIds;
+    }
+
+    private boolean enterStage(SubmitStage stage) {
+        if (cancelRequested && stage.isCancellable()) {
+            stopped = true;
+            return false;
+        }
+        updateMessage(stage.toString());
+        updateProgress(stage.ordinal(), SubmitStage.values().length);
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+
+/**
+ * Snapshot of the records in the site temp file, taken when the operator submits. Each
+ * batch lives in its own folder in the {@link Outbox}, holding the frozen records and a
+ * manifest of how far the submission has got. The manifest is saved after every phase,
+ * so a submission interrupted by a network failure or a PC restart can carry on from
+ * the last phase that completed.
+ */
+public class Batch {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Progress of the batch as a whole.
+     */
+    public enum Phase {
+        // Folder created, records may still be in the temp file
+        FROZEN,
+        // Records moved out of the temp file
+        TEMP_CLEARED,
+        // Every DAT/EOT pair sent to RPD
+        SENT,
+        // Report written
+        REPORTED
+    }
+
+    /**
+     * Progress of a single DAT/EOT pair.
+     */
+    public enum ChunkPhase {
+        PENDING, DAT_WRITTEN, DAT_SENT, EOT_WRITTEN, EOT_SENT
+    }
+
+    static final String RECORDS = "records";
+    private static final String MANIFEST = "batch.properties";
+
+    private final Path dir;
+    private final Properties manifest;
+
+    private Batch(Path dir, Properties manifest) {
+        this.dir = dir;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Creates the folder and manifest for a new batch.
+     *
+     * @param dir the batch folder
+     * @param timeStamp the time the batch was frozen
+     * @param user the user submitting the batch
+     * @param maxRunVol the maximum number of Job IDs in each DAT file, 0 for no limit
+     * @return the batch
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static Batch create(Path dir, String timeStamp, String user, int maxRunVol) throws IOException {
+        Files.createDirectories(dir);
+        Properties manifest = new Properties();
+        manifest.setProperty("timeStamp", timeStamp);
+        manifest.setProperty("user", user == null ? "" : user);
+        manifest.setProperty("maxRunVol", Integer.toString(maxRunVol));
+        manifest.setProperty("size", "0");
+        manifest.setProperty("chunks", "1");
+        manifest.setProperty("phase", Phase.FROZEN.name());
+        Batch batch = new Batch(dir, manifest);
+        batch.save();
+        return batch;
+    }
+
+    /**
+     * Loads a batch from its folder in the outbox.
+     *
+     * @param dir the batch folder
+     * @return the batch
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static Batch load(Path dir) throws IOException {
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(dir.resolve(MANIFEST), FileManager.ENCODING)) {
+            manifest.load(reader);
+        }
+        return new Batch(dir, manifest);
+    }
+
+    /**
+     * Records that the batch has been moved out of the temp file. The number of DAT/EOT
+     * pairs is fixed here, so the file names stay the same however often the batch is
+     * retried.
+     *
+     * @param records the number of records in the batch
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    synchronized void tempCleared(int records) throws IOException {
+        int maxRunVol = getInt("maxRunVol");
+        int chunks = maxRunVol > 0 ? Math.max(1, (records + maxRunVol - 1) / maxRunVol) : 1;
+        manifest.setProperty("size", Integer.toString(records));
+        manifest.setProperty("chunks", Integer.toString(chunks));
+        for (int i = 0; i < chunks; i++) {
+            manifest.setProperty(key(i, "phase"), ChunkPhase.PENDING.name());
+        }
+        manifest.setProperty("phase", Phase.TEMP_CLEARED.name());
+        save();
+    }
+
+    /**
+     * Gets the folder holding the batch.
+     *
+     * @return the batch folder
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Gets the file holding the frozen records.
+     *
+     * @return the batch file
+     */
+    public File getFile() {
+        return dir.resolve(RECORDS).toFile();
+    }
+
+    /**
+     * Gets the time the batch was frozen, used to name the DAT, EOT and report files.
+     *
+     * @return the time stamp in the format ddMMyyyy_HHmmss
+     */
+    public String getTimeStamp() {
+        return manifest.getProperty("timeStamp");
+    }
+
+    /**
+     * Gets the user who submitted the batch, written to the EOT files.
+     *
+     * @return the user name
+     */
+    public String getUser() {
+        return manifest.getProperty("user");
+    }
+
+    public synchronized Phase getPhase() {
+        return Phase.valueOf(manifest.getProperty("phase"));
+    }
+
+    /**
+     * Records the batch phase in the manifest.
+     *
+     * @param phase the phase reached
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void setPhase(Phase phase) throws IOException {
+        manifest.setProperty("phase", phase.name());
+        save();
+    }
+
+    /**
+     * Gets the number of DAT/EOT pairs the batch is sent as.
+     *
+     * @return the number of chunks
+     */
+    public int getChunks() {
+        return getInt("chunks");
+    }
+
+    int getMaxRunVol() {
+        return getInt("maxRunVol");
+    }
+
+    synchronized ChunkPhase getChunkPhase(int chunk) {
+        return ChunkPhase.valueOf(manifest.getProperty(key(chunk, "phase"), ChunkPhase.PENDING.name()));
+    }
+
+    synchronized void setChunkPhase(int chunk, ChunkPhase phase) throws IOException {
+        manifest.setProperty(key(chunk, "phase"), phase.name());
+        save();
+    }
+
+    /**
+     * Records that the DAT file for a chunk has been written.
+     *
+     * @param chunk the chunk number
+     * @param runVol the number of Job IDs in the DAT file
+     * @param hash the content hash of the DAT file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    synchronized void datWritten(int chunk, int runVol, String hash) throws IOException {
+        manifest.setProperty(key(chunk, "runVol"), Integer.toString(runVol));
+        manifest.setProperty(key(chunk, "hash"), hash);
+        manifest.setProperty(key(chunk, "phase"), ChunkPhase.DAT_WRITTEN.name());
+        save();
+    }
+
+    synchronized int getRunVol(int chunk) {
+        return Integer.parseInt(manifest.getProperty(key(chunk, "runVol"), "0"));
+    }
+
+    synchronized String getHash(int chunk) {
+        return manifest.getProperty(key(chunk, "hash"), "");
+    }
+
+    /**
+     * Reads the Job IDs in the batch as numbers, for removing them from the index.
+     * Unreadable records are left out with a warning.
+     *
+     * @return the numeric Job IDs
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long[] getNumericIds() throws IOException {
+        try (Stream<String> lines = Files.lines(getFile().toPath(), FileManager.ENCODING)) {
+            return lines.filter(r -> !r.isEmpty()).flatMapToLong(r -> {
+                long id = JobId.parseRecordId(r);
+                if (id < 0) {
+                    LOGGER.warn("Skipping unreadable record [{}] in batch {}", r, getTimeStamp());
+                    return LongStream.empty();
+                }
+                return LongStream.of(id);
+            }).toArray();
+        }
+    }
+
+    public int size() {
+        return getInt("size");
+    }
+
+    private synchronized int getInt(String key) {
+        return Integer.parseInt(manifest.getProperty(key, "0"));
+    }
+
+    private static String key(int chunk, String name) {
+        return "chunk." + (chunk + 1) + "." + name;
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it into place, so a failure
+     * part way through never leaves a damaged manifest.
+     */
+    private void save() throws IOException {
+        Path tmp = Paths.get(dir.resolve(MANIFEST) + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, FileManager.ENCODING)) {
+            manifest.store(writer, "Despatch batch " + getTimeStamp());
+        }
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,175 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
+
+/**
+ * Loads Job IDs from a file into a site's temp file, for when they cannot be scanned.
+ * The Job ID is the first field on each line, and may be quoted, so a supplier CSV can
+ * be loaded as it is. The file is read a block at a time and the Job IDs are parsed
+ * straight from the bytes. Each Job ID is checked in the same way as a scanned one,
+ * Job IDs already in the index are skipped, and the rest are written to the temp file
+ * in blocks.
+ */
+public class BulkLoader {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int READ_BUFFER = 64 * 1024;
+    // Job IDs written to the temp file at a time
+    private static final int BLOCK = 64 * 1024;
+    private static final int JID_LENGTH = 10;
+    // Unreadable lines logged individually, any more are only counted
+    private static final int MAX_LOGGED = 20;
+
+    private final FileManager fileManager;
+    private final JobIdIndex index;
+    private final long[] block = new long[BLOCK];
+    private int blockSize;
+    private long lines;
+    private long added;
+    private long duplicates;
+    private long invalid;
+
+    /**
+     * Instantiates a new bulk loader.
+     *
+     * @param fileManager the file manager for the site, already read
+     * @param index the Job IDs already in the temp file and outbox, added to as Job IDs are loaded
+     */
+    public BulkLoader(FileManager fileManager, JobIdIndex index) {
+        this.fileManager = fileManager;
+        this.index = index;
+    }
+
+    /**
+     * Loads the Job IDs from a file.
+     *
+     * @param input the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void load(Path input) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER];
+        long value = 0;
+        int digits = 0;
+        boolean empty = true;
+        boolean fieldEnded = false;
+        boolean afterDigits = false;
+        boolean bad = false;
+        boolean first = true;
+        try (InputStream in = Files.newInputStream(input)) {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                int from = 0;
+                if (first && read >= 3 && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF) {
+                    // UTF-8 byte order mark
+                    from = 3;
+                }
+                first = first && read == 0;
+                for (int i = from; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        endLine(empty, !bad && digits == JID_LENGTH, value);
+                        value = 0;
+                        digits = 0;
+                        empty = true;
+                        fieldEnded = false;
+                        afterDigits = false;
+                        bad = false;
+                        continue;
+                    }
+                    if (fieldEnded || b == '\r') {
+                        continue;
+                    }
+                    empty = false;
+                    if (b >= '0' && b <= '9') {
+                        bad |= afterDigits || digits == JID_LENGTH;
+                        value = value * 10 + (b - '0');
+                        digits++;
+                    } else if (b == ',' || b == '\t' || b == ';') {
+                        fieldEnded = true;
+                    } else if (b == '"' || b == ' ') {
+                        afterDigits = digits > 0;
+                    } else {
+                        bad = true;
+                    }
+                }
+            }
+        }
+        // Last line may not end with a newline
+        endLine(empty, !bad && digits == JID_LENGTH, value);
+        flush();
+    }
+
+    private void endLine(boolean empty, boolean valid, long value) throws IOException {
+        if (empty) {
+            return;
+        }
+        lines++;
+        if (!valid || !JobId.isValid(value)) {
+            if (invalid++ < MAX_LOGGED) {
+                LOGGER.warn("Line {} does not start with a Job ID", lines);
+            }
+            return;
+        }
+        if (!index.add(value)) {
+            duplicates++;
+            return;
+        }
+        block[blockSize++] = value;
+        if (blockSize == BLOCK) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        fileManager.appendAll(block, blockSize);
+        added += blockSize;
+        blockSize = 0;
+    }
+
+    /**
+     * Gets the number of lines read, not counting blank lines.
+     *
+     * @return the number of lines
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * Gets the number of Job IDs added to the temp file.
+     *
+     * @return the number of Job IDs added
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the number of Job IDs skipped as they were already in the temp file, the
+     * outbox, or earlier in the input.
+     *
+     * @return the number of duplicates
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Gets the number of lines that did not start with a valid Job ID, including any
+     * header line.
+     *
+     * @return the number of invalid lines
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+}
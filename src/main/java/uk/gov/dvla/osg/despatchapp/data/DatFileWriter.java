@@ -0,0 +1,105 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes DAT files straight from the records in a batch file. The Job ID column is
+ * copied byte by byte between two direct buffers, so the batch is never decoded into
+ * Strings or held in memory.
+ */
+class DatFileWriter {
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+    // DAT files have always been written with the platform line separator
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte TAB = '\t';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private DatFileWriter() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes the Job ID from each record in the batch file to the DAT files, one per line.
+     * Each DAT file is filled up to the maximum before the next one is started.
+     *
+     * @param batchFile the batch file
+     * @param datFiles the DAT files, in order
+     * @param maxRecordsPerFile the maximum number of Job IDs in each DAT file
+     * @return the number of Job IDs written to each DAT file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static int[] write(Path batchFile, List<Path> datFiles, int maxRecordsPerFile) throws IOException {
+        int[] counts = new int[datFiles.size()];
+        int chunk = 0;
+        FileChannel out = null;
+        try (FileChannel in = FileChannel.open(batchFile, READ)) {
+            int bufferSize = (int) Math.min(MAX_BUFFER_SIZE, Math.max(in.size(), 1));
+            ByteBuffer src = ByteBuffer.allocateDirect(bufferSize);
+            ByteBuffer dst = ByteBuffer.allocateDirect(bufferSize + LINE_SEPARATOR.length);
+            out = FileChannel.open(datFiles.get(chunk), CREATE, TRUNCATE_EXISTING, WRITE);
+
+            boolean inJobId = true;
+            boolean lineHasJobId = false;
+            while (in.read(src) != -1) {
+                src.flip();
+                while (src.hasRemaining()) {
+                    byte b = src.get();
+                    if (b == LF) {
+                        if (lineHasJobId) {
+                            dst.put(LINE_SEPARATOR);
+                            counts[chunk]++;
+                        }
+                        inJobId = true;
+                        lineHasJobId = false;
+                    } else if (b == TAB) {
+                        inJobId = false;
+                    } else if (inJobId && b != CR) {
+                        // move on to the next DAT file when a new Job ID starts and this one is full
+                        if (!lineHasJobId && counts[chunk] == maxRecordsPerFile && chunk < datFiles.size() - 1) {
+                            drain(dst, out);
+                            out.close();
+                            out = FileChannel.open(datFiles.get(++chunk), CREATE, TRUNCATE_EXISTING, WRITE);
+                        }
+                        dst.put(b);
+                        lineHasJobId = true;
+                    }
+                    if (dst.remaining() < LINE_SEPARATOR.length + 1) {
+                        drain(dst, out);
+                    }
+                }
+                src.clear();
+            }
+            // last record may not end with a new line
+            if (lineHasJobId) {
+                dst.put(LINE_SEPARATOR);
+                counts[chunk]++;
+            }
+            drain(dst, out);
+            return counts;
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    private static void drain(ByteBuffer dst, FileChannel out) throws IOException {
+        dst.flip();
+        while (dst.hasRemaining()) {
+            out.write(dst);
+        }
+        dst.clear();
+    }
+}
@@ -0,0 +1,215 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+
+/**
+ * Every Job ID sent to RPD from a site over the retention period, so that a job scanned
+ * again on a later day can be spotted. The Job IDs sent each day are kept in a
+ * {@link JobIdBitmap} file in the repository, e.g. {repoDir}\despatched\MORRISTON\20201231.bitmap.
+ * Files for earlier days never change, and are memory mapped rather than read. The
+ * file for the current day is held on the heap and rewritten as each batch is sent,
+ * as Windows will not let a mapped file be replaced. Files past the retention period
+ * are deleted when the index is opened.
+ * <p>
+ * A lookup checks each day's bitmap, newest first, without locking or allocating.
+ */
+public class DespatchedIndex {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private static final DateTimeFormatter DAY_FILE = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String EXTENSION = ".bitmap";
+    private static final Histogram UPDATE_TIME = Metrics.timer("despatched.update");
+
+    private final Path dir;
+    private final int retentionDays;
+    // Newest first, replaced as a whole so that lookups need no lock
+    private volatile Day[] days = new Day[0];
+
+    /**
+     * Instantiates a new index. Nothing is read until {@link #open()} is called.
+     *
+     * @param dir the folder for the site's bitmap files
+     * @param retentionDays the number of days a Job ID is kept
+     */
+    public DespatchedIndex(Path dir, int retentionDays) {
+        this.dir = dir;
+        this.retentionDays = Math.max(1, retentionDays);
+    }
+
+    /**
+     * Deletes the files past the retention period and maps the rest. A file that cannot
+     * be read is logged and left out.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(dir);
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.minusDays(retentionDays);
+        List<Day> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path file : files) {
+                LocalDate day = dayOf(file);
+                if (day == null) {
+                    continue;
+                }
+                if (day.isBefore(cutoff)) {
+                    LOGGER.info("Deleting despatched Job IDs after {} days: {}", retentionDays, file);
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                try {
+                    loaded.add(new Day(day, JobIdBitmap.wrap(day.isBefore(today) ? map(file) : ByteBuffer.wrap(Files.readAllBytes(file)))));
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.error("Ignoring despatched Job IDs in [{}], {}", file, ex.getMessage());
+                }
+            }
+        }
+        loaded.sort(Comparator.comparing((Day d) -> d.day).reversed());
+        days = loaded.toArray(new Day[0]);
+        LOGGER.info("Loaded despatched Job IDs for {} days from {}, {} in total", days.length, dir, size());
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static LocalDate dayOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return LocalDate.parse(name.substring(0, name.length() - EXTENSION.length()), DAY_FILE);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the day a Job ID was sent to RPD. Safe to call from any thread.
+     *
+     * @param id the numeric Job ID
+     * @return the most recent day it was sent, or null if it has not been sent
+     */
+    public LocalDate despatchedOn(long id) {
+        for (Day day : days) {
+            if (day.ids.contains(id)) {
+                return day.day;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the Job IDs of a batch that has been sent to today's file. The file is
+     * written in full to a temporary file and moved into place, and only then used for
+     * lookups.
+     *
+     * @param ids the numeric Job IDs
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void addAll(long[] ids) throws IOException {
+        long started = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        Day[] current = days;
+        boolean existing = current.length > 0 && current[0].day.equals(today);
+        long[] merged;
+        int count;
+        if (existing) {
+            merged = current[0].ids.toArray(ids.length);
+            count = (int) current[0].ids.cardinality();
+        } else {
+            merged = new long[ids.length];
+            count = 0;
+        }
+        System.arraycopy(ids, 0, merged, count, ids.length);
+        count += ids.length;
+        Arrays.sort(merged, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || merged[i] != merged[unique - 1]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        ByteBuffer bitmap = JobIdBitmap.serialize(merged, unique);
+
+        Path file = dir.resolve(DAY_FILE.format(today) + EXTENSION);
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer bytes = bitmap.duplicate();
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(false);
+        }
+        Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        Day day = new Day(today, JobIdBitmap.wrap(bitmap));
+        Day[] updated;
+        if (existing) {
+            updated = current.clone();
+            updated[0] = day;
+        } else {
+            updated = new Day[current.length + 1];
+            updated[0] = day;
+            System.arraycopy(current, 0, updated, 1, current.length);
+        }
+        days = updated;
+        UPDATE_TIME.recordSince(started);
+    }
+
+    /**
+     * Gets the number of Job IDs sent over the retention period, counting a Job ID once
+     * for each day it was sent.
+     *
+     * @return the number of Job IDs
+     */
+    public long size() {
+        long size = 0;
+        for (Day day : days) {
+            size += day.ids.cardinality();
+        }
+        return size;
+    }
+
+    /**
+     * The Job IDs sent on one day.
+     */
+    private static final class Day {
+
+        private final LocalDate day;
+        private final JobIdBitmap ids;
+
+        Day(LocalDate day, JobIdBitmap ids) {
+            this.day = day;
+            this.ids = ids;
+        }
+    }
+}
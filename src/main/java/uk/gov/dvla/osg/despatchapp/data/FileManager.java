@@ -4,10 +4,20 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -15,8 +25,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.data.Batch.ChunkPhase;
+import uk.gov.dvla.osg.despatchapp.data.Batch.Phase;
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
 import uk.gov.dvla.osg.despatchapp.utilities.DateUtils;
-import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
+import uk.gov.dvla.osg.despatchapp.utilities.RepositoryLayout;
 import uk.gov.dvla.osg.rpd.web.client.SubmitJobClient;
 import uk.gov.dvla.osg.rpd.web.config.Session;
 import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
@@ -27,8 +43,37 @@ public class FileManager {
 
     final static Charset ENCODING = StandardCharsets.UTF_8;
     final static String NEWLINE = "\n"; // Ensures NewLine characters are Unix compatible
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    // The RPD client is one instance for the whole application and keeps the error of
+    // its last transfer, so transfers from every chunk and site take turns
+    private static final Object RPD_CLIENT_LOCK = new Object();
+    private static final Histogram BATCH_SIZE = Metrics.histogram("batch.size", "items");
+    private static final Histogram DAT_WRITE_TIME = Metrics.timer("submit.dat.write");
+    private static final Histogram DAT_SEND_TIME = Metrics.timer("submit.dat.send");
+    private static final Histogram EOT_WRITE_TIME = Metrics.timer("submit.eot.write");
+    private static final Histogram EOT_SEND_TIME = Metrics.timer("submit.eot.send");
+
+    private String datFile, eotFile;
+    private File tempFile;
+    private int maxRunVol, submitThreads;
+    private SiteJournal journal;
+    private JournalList items;
+    private SiteLock siteLock;
+    private Outbox outbox;
+    private DespatchedIndex despatched;
+    private List<Batch> pendingBatches = new ArrayList<>();
+    private RpdClient rpdClient = new RpdClient() {
+        @Override
+        public boolean trySubmit(File file) {
+            return SubmitJobClient.getInstance().trySubmit(file);
+        }
 
-    private File datFile, eotFile, tempFile;
+        @Override
+        public RpdErrorResponse getErrorResponse() {
+            return SubmitJobClient.getInstance().getErrorResponse();
+        }
+    };
 
     /**
      * Instantiates a new file manager.
@@ -38,197 +83,486 @@ public class FileManager {
     public FileManager(SiteConfig config) {
         LOGGER.debug("Loding File Manager...");
         tempFile = new File(config.tempFile());
-
-        String timeStamp = DateUtils.timeStamp("ddMMyyyy_HHmmss");
-        datFile = new File(config.datFile() + timeStamp + ".DAT");
-        eotFile = new File(config.eotFile() + timeStamp + ".EOT");
+        journal = new SiteJournal(tempFile.toPath(), config.durability(), config.groupCommitMillis(), config.groupCommitRecords());
+        items = new JournalList(journal);
+        siteLock = new SiteLock(tempFile.toPath());
+        outbox = new Outbox(Paths.get(config.repository(), "outbox"), config.site().name());
+        despatched = new DespatchedIndex(Paths.get(config.repository(), "despatched", config.site().name()), config.retentionPeriod());
+
+        datFile = config.datFile();
+        eotFile = config.eotFile();
+        maxRunVol = config.maxRunVol();
+        submitThreads = Math.max(1, config.submitThreads());
     }
 
     /**
-     * Reads data from the temp file when the site is chosen.
+     * Reads data from the temp file when the site is chosen. The site is locked
+     * first, and the lock and journal are kept until the application closes. The
+     * records stay in the file, they are read through {@link #getItems()}. The journal
+     * is read from its last checkpoint, and a damaged tail is cut off. Called on a
+     * background thread. If the journal cannot be read the caller is left to tell the
+     * user and {@link #close()} the site, which releases the lock.
      *
-     * @return the list
-     * @throws IOException Signals that an I/O exception has occurred.
-     * @throws RuntimeException Application is in use by another user
+     * @return the numeric Job IDs of the records, to build the duplicate index
+     * @throws SiteInUseException Application is in use by another user
+     * @throws IOException if the temp file or outbox cannot be read
      */
-    public List<String> read() throws IOException, RuntimeException {
+    public long[] read() throws IOException {
         LOGGER.debug("Looking for Temp file [{}]", tempFile.getAbsolutePath());
-        // Create new file if it does not already exist on the file system
-        if (!tempFile.exists()) {
-            LOGGER.debug("Temp file [{}] does not exist. Creating new file.", tempFile.getAbsolutePath());
-            // Create file
-            FileUtils.touch(tempFile);
-            // Apply lock on file
-            lockTempFile();
-            // Return empty list
-            return new ArrayList<String>();
-        }
-        LOGGER.debug("Checking Temp file is writable");
         // Check if another user has the application open
-        if (!tempFile.canWrite()) {
-            throw new RuntimeException("File already in use");
+        siteLock.acquire();
+        // Earlier versions locked the file by making it read only
+        if (tempFile.exists() && !tempFile.canWrite()) {
+            LOGGER.warn("Clearing read only flag on [{}]", tempFile.getAbsolutePath());
+            tempFile.setWritable(true);
         }
         LOGGER.debug("Reading from Temp file...");
-        // Read file contents
-        List<String> lines = null;
+        // Replay the journal, creating the file if it does not already exist
+        long[] ids;
         try {
-            lines = FileUtils.readLines(tempFile, ENCODING);
+            ids = recoverOutbox(journal.open());
         } catch (IOException ex) {
             LOGGER.error("Reading from temp file failed: {}", ex.getMessage());
-            ErrMsgDialog.show("File read error", "Unable to read input file");
+            throw ex;
         }
         LOGGER.debug("Temp file read");
-        // Apply lock on file
-        lockTempFile();
+        try {
+            despatched.open();
+        } catch (IOException ex) {
+            // Scanning carries on, without the warning for Job IDs sent before
+            LOGGER.error("Unable to read despatched Job IDs, {}", ex.getMessage());
+        }
 
-        return lines;
+        return ids;
 
     }
 
     /**
-     * Each Job ID is written to the temp file to keep it synchronised with the
-     * ListView and to persist data in case of PC failure.
-     * 
-     * @param jid the jid
+     * Gets the scanned items for the ListView. Each Job ID is written to the temp file
+     * through this list, to keep it synchronised with the ListView and to persist data
+     * in case of PC failure.
+     *
+     * @return the items in the temp file
+     */
+    public JournalList getItems() {
+        return items;
+    }
+
+    /**
+     * Gets the Job IDs the site has sent to RPD over the retention period, to warn
+     * when a job is scanned again on a later batch.
+     *
+     * @return the despatched Job IDs
+     */
+    public DespatchedIndex getDespatched() {
+        return despatched;
+    }
+
+
+    /**
+     * Adds Job IDs to the end of the temp file in bulk, without going through the list.
+     * Only used when the items are not being shown.
+     *
+     * @param ids the numeric Job IDs
+     * @param count the number of Job IDs to add from the start of the array
      * @throws IOException Signals that an I/O exception has occurred.
      */
-    public void append(String jid) throws IOException {
-        LOGGER.debug("Unlocking Temp File...");
-        // Temporarily unlock the file
-        unlockTempFile();
-        // Save JID to file
-        LOGGER.debug("Appending JID to file...");
-        FileUtils.writeStringToFile(tempFile, jid + NEWLINE, ENCODING, true);
-        // Re-apply lock on file
-        LOGGER.debug("Locking Temp file...");
-        lockTempFile();
+    public void appendAll(long[] ids, int count) throws IOException {
+        journal.addAll(ids, count);
     }
 
     /**
-     * Removes the search string line from the file.
+     * Freezes the current contents of the temp file as a batch in the outbox and empties
+     * the temp file, ready for the next batch to be scanned.
      *
-     * @param searchString the search string
+     * @return the batch
      * @throws IOException Signals that an I/O exception has occurred.
      */
-    public void remove(String searchString) throws IOException {
-        // Temporarily unlock the file
-        unlockTempFile();
-        // Read all lines from file
-        List<String> lines = FileUtils.readLines(tempFile, ENCODING);
-        // Ignore search string while creating new list
-        List<String> updatedLines = lines.stream().filter(s -> !s.equals(searchString)).collect(Collectors.toList());
-        // Overwrite the file contents with the new list
-        FileUtils.writeLines(tempFile, updatedLines, false);
-        // Re-apply lock on file
-        lockTempFile();
+    public Batch freeze() throws IOException {
+        String timeStamp = DateUtils.timeStamp("ddMMyyyy_HHmmss");
+        Batch batch = outbox.create(timeStamp, Session.getInstance().getUserName(), maxRunVol);
+        int records = journal.rollover(batch.getFile().toPath());
+        batch.tempCleared(records);
+        BATCH_SIZE.record(records);
+        LOGGER.info("Batch {} frozen with {} items", timeStamp, records);
+        return batch;
     }
 
     /**
-     * Creates DAT and EOT files and then sends these over to the RPD hotfolder.
+     * Returns the records of a batch to the temp file, so they can be submitted again with
+     * the next batch. Only used when no DAT file from the batch has been sent.
      *
-     * @param list the list of Job IDs
+     * @param batch the batch
+     * @return the number of records returned to the temp file
+     * @throws IOException Signals that an I/O exception has occurred.
      */
-    public boolean trySendToRpd(List<String> list) {
-        // Create DAT file in temp folder
-        LOGGER.info("Writing to DAT file {}", datFile.getAbsolutePath());
+    public int restore(Batch batch) throws IOException {
+        int records = journal.restore(batch.getFile().toPath());
+        outbox.delete(batch);
+        LOGGER.info("{} items from batch {} returned to the temp file", records, batch.getTimeStamp());
+        return records;
+    }
 
-        try {
-            FileUtils.writeLines(datFile, list, false);
-        } catch (IOException ex) {
-            LOGGER.error("Unable to save DAT file {}, {}", datFile.getAbsolutePath(), ex.getMessage());
-            ErrMsgDialog.show("Save file error", "Unable to save DAT file.");
-            return false;
+    /**
+     * Removes the batch from the outbox once it has been submitted.
+     *
+     * @param batch the batch
+     */
+    public void complete(Batch batch) {
+        outbox.delete(batch);
+    }
+
+    /**
+     * Gets the batches found in the outbox when the temp file was read, which still need
+     * to be sent to RPD.
+     *
+     * @return the unsent batches
+     */
+    public List<Batch> getPendingBatches() {
+        return pendingBatches;
+    }
+
+    /**
+     * Checks the outbox for batches left behind when the application closed. A batch that
+     * was still being frozen may have records in the temp file as well, so its records
+     * are returned to the temp file, skipping any that are already there. Any other batch
+     * has left the temp file and is kept in the outbox to be sent.
+     *
+     * @param ids the numeric Job IDs of the records in the temp file
+     * @return the numeric Job IDs with those of any records returned to the temp file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private long[] recoverOutbox(long[] ids) throws IOException {
+        pendingBatches = new ArrayList<>();
+        LongStream.Builder restored = LongStream.builder();
+        Set<String> live = null;
+        for (Batch batch : outbox.load()) {
+            if (batch.getPhase() != Phase.FROZEN) {
+                LOGGER.warn("Batch {} is waiting in the outbox at phase {}", batch.getTimeStamp(), batch.getPhase());
+                pendingBatches.add(batch);
+                continue;
+            }
+            LOGGER.warn("Restoring unsent batch [{}]", batch.getDirectory());
+            if (live == null) {
+                live = new HashSet<>();
+                journal.forEachRecord(live::add);
+            }
+            if (batch.getFile().exists()) {
+                for (String record : FileUtils.readLines(batch.getFile(), ENCODING)) {
+                    if (record.isEmpty()) {
+                        continue;
+                    }
+                    if (record.length() != JobId.RECORD_LENGTH) {
+                        LOGGER.warn("Skipping unreadable line [{}] in batch {}", record, batch.getTimeStamp());
+                    } else if (live.add(record)) {
+                        journal.add(record);
+                        restored.add(JobId.parseRecordId(record));
+                    }
+                }
+            }
+            outbox.delete(batch);
         }
+        return LongStream.concat(Arrays.stream(ids), restored.build()).toArray();
+    }
 
-        LOGGER.info("DAT file written.");
+    /**
+     * Creates DAT and EOT files and then sends these over to the RPD hotfolder. Each step
+     * is recorded in the batch manifest, so a batch that failed part way through carries
+     * on from the last step that completed. The listener is told as each stage starts,
+     * and may stop the submission by returning false while the stage can still be
+     * cancelled.
+     *
+     * @param batch the batch to send
+     * @param listener the listener for each submission stage
+     * @return true, if every DAT and EOT file was sent
+     */
+    public boolean trySendToRpd(Batch batch, SubmitListener listener) {
+        int chunks = batch.getChunks();
+        List<File> datFiles = new ArrayList<>(chunks);
+        List<File> eotFiles = new ArrayList<>(chunks);
+        // Files go in the folder for the day the batch was frozen, however often it is retried
+        String datPrefix = RepositoryLayout.shard(this.datFile, batch.getTimeStamp());
+        String eotPrefix = RepositoryLayout.shard(this.eotFile, batch.getTimeStamp());
+        for (int i = 0; i < chunks; i++) {
+            String suffix = chunks == 1 ? "" : "_" + (i + 1);
+            datFiles.add(new File(datPrefix + batch.getTimeStamp() + suffix + ".DAT"));
+            eotFiles.add(new File(eotPrefix + batch.getTimeStamp() + suffix + ".EOT"));
+        }
 
-        LOGGER.info("Sending DAT file to RPD");
-        // Send DAT files to RPD via web client
-        if (!sendToRpd(datFile)) {
-            LOGGER.info("Unable to send DAT file");
+        if (!listener.enterStage(SubmitStage.WRITING_DAT)) {
             return false;
         }
+        long started = System.nanoTime();
+        if (!prepareDatFiles(batch, datFiles, listener)) {
+            return false;
+        }
+        DAT_WRITE_TIME.recordSince(started);
 
-        LOGGER.info("DAT file transmitted");
+        if (!listener.enterStage(SubmitStage.SENDING_DAT)) {
+            return false;
+        }
+        LOGGER.info("Sending DAT files to RPD");
+        // Send DAT files to RPD via web client
+        runChunks(chunks, i -> sendDat(batch, i, datFiles.get(i), listener));
 
-        // Create matching EOT file
+        listener.enterStage(SubmitStage.SENDING_EOT);
+        // Create and send matching EOT files for each DAT file that was sent
         String runDate = DateUtils.timeStamp("ddMMyyyy");
+        boolean[] sent = runChunks(chunks, i -> sendEot(batch, i, eotFiles.get(i), runDate, listener));
 
-        List<String> eotContent = Arrays.asList("RUNVOL=" + list.size(), "USER=" + Session.getInstance().getUserName(), "RUNDATE="
-                + runDate);
-
-        LOGGER.info("Writing data to EOT file {}", eotFile.getAbsolutePath());
+        int unsent = 0;
+        for (boolean chunkSent : sent) {
+            unsent += chunkSent ? 0 : 1;
+        }
+        if (unsent > 0) {
+            LOGGER.error("{} of {} DAT/EOT pairs for batch {} were not sent", unsent, chunks, batch.getTimeStamp());
+            return false;
+        }
+        try {
+            batch.setPhase(Phase.SENT);
+        } catch (IOException ex) {
+            // Every pair is marked as sent, so a retry goes straight to the report
+            LOGGER.error("Unable to update batch {}, {}", batch.getTimeStamp(), ex.getMessage());
+        }
+        try {
+            despatched.addAll(batch.getNumericIds());
+        } catch (IOException ex) {
+            // The batch has been sent, only the warning for these Job IDs is lost
+            LOGGER.error("Unable to record batch {} as despatched, {}", batch.getTimeStamp(), ex.getMessage());
+        }
+        LOGGER.info("EOT files transmitted.");
+        return true;
+    }
 
+    /**
+     * Writes the DAT files for any chunk that has not yet been sent. Files written by an
+     * earlier attempt are reused if their content hash still matches, so a resend is
+     * byte-for-byte the same file.
+     *
+     * @return true, if every DAT file that still needs sending is in place
+     */
+    private boolean prepareDatFiles(Batch batch, List<File> datFiles, SubmitListener listener) {
+        int chunks = datFiles.size();
         try {
-            FileUtils.writeLines(eotFile, eotContent, false);
+            boolean rewrite = false;
+            for (int i = 0; i < chunks && !rewrite; i++) {
+                ChunkPhase phase = batch.getChunkPhase(i);
+                rewrite = phase == ChunkPhase.PENDING
+                        || (phase == ChunkPhase.DAT_WRITTEN && !hashMatches(datFiles.get(i), batch.getHash(i)));
+            }
+            if (!rewrite) {
+                return true;
+            }
+            // Create DAT files in the repository
+            LOGGER.info("Writing {} DAT file(s) for batch {}", chunks, batch.getTimeStamp());
+            List<Path> datPaths = datFiles.stream().map(File::toPath).collect(Collectors.toList());
+            Files.createDirectories(datPaths.get(0).getParent());
+            int maxRunVol = batch.getMaxRunVol();
+            int[] runVols = DatFileWriter.write(batch.getFile().toPath(), datPaths, maxRunVol > 0 ? maxRunVol : Integer.MAX_VALUE);
+            for (int i = 0; i < chunks; i++) {
+                if (batch.getChunkPhase(i).compareTo(ChunkPhase.DAT_SENT) >= 0) {
+                    continue;
+                }
+                batch.datWritten(i, runVols[i], Outbox.hash(datFiles.get(i).toPath()));
+            }
         } catch (IOException ex) {
-            LOGGER.info("Unable to save EOT file", ex);
-            ErrMsgDialog.show("File save error", "Unable to save EOT file");
+            LOGGER.error("Unable to save DAT file for batch {}, {}", batch.getTimeStamp(), ex.getMessage());
+            listener.showError("Save file error", "Unable to save DAT file.");
             return false;
         }
+        LOGGER.info("DAT file written.");
+        return true;
+    }
 
-        LOGGER.info("EOT file written to. Sending EOT to RPD.");
+    private static boolean hashMatches(File file, String hash) throws IOException {
+        return file.exists() && Outbox.hash(file.toPath()).equals(hash);
+    }
 
-        // Send EOT files to RPD via web client
-        if (!sendToRpd(eotFile)) {
-            return false;
+    /**
+     * Sends the DAT file for a chunk, unless it has already been sent. The file goes in
+     * the sent ledger as soon as RPD accepts it, so if the phase cannot be saved after
+     * that, the next attempt finds it in the ledger rather than sending it twice.
+     */
+    private boolean sendDat(Batch batch, int chunk, File datFile, SubmitListener listener) throws IOException {
+        if (batch.getChunkPhase(chunk) != ChunkPhase.DAT_WRITTEN) {
+            return true;
+        }
+        String hash = batch.getHash(chunk);
+        if (outbox.isSent(batch.getTimeStamp(), chunk, hash)) {
+            LOGGER.warn("{} has already been sent to RPD", datFile.getName());
+        } else {
+            long started = System.nanoTime();
+            if (!sendToRpd(datFile, listener)) {
+                return false;
+            }
+            DAT_SEND_TIME.recordSince(started);
+            outbox.recordSent(batch.getTimeStamp(), chunk, hash, datFile.getName());
+        }
+        batch.setChunkPhase(chunk, ChunkPhase.DAT_SENT);
+        return true;
+    }
+
+    /**
+     * Writes and sends the EOT file for a chunk once its DAT file has been sent.
+     */
+    private boolean sendEot(Batch batch, int chunk, File eotFile, String runDate, SubmitListener listener) throws IOException {
+        if (batch.getChunkPhase(chunk) == ChunkPhase.DAT_SENT) {
+            long started = System.nanoTime();
+            if (!writeEot(eotFile, batch.getRunVol(chunk), batch.getUser(), runDate, listener)) {
+                return false;
+            }
+            EOT_WRITE_TIME.recordSince(started);
+            batch.setChunkPhase(chunk, ChunkPhase.EOT_WRITTEN);
+        }
+        if (batch.getChunkPhase(chunk) == ChunkPhase.EOT_WRITTEN) {
+            long started = System.nanoTime();
+            if (!sendToRpd(eotFile, listener)) {
+                return false;
+            }
+            EOT_SEND_TIME.recordSince(started);
+            batch.setChunkPhase(chunk, ChunkPhase.EOT_SENT);
         }
+        return batch.getChunkPhase(chunk) == ChunkPhase.EOT_SENT;
+    }
+
+    /**
+     * Writes the EOT file for a DAT file.
+     *
+     * @param eotFile the EOT file
+     * @param runVol the number of Job IDs in the DAT file
+     * @param user the user submitting the batch
+     * @param runDate the run date
+     * @param listener told if the file cannot be saved
+     * @return true, if successful
+     */
+    private boolean writeEot(File eotFile, int runVol, String user, String runDate, SubmitListener listener) {
+        List<String> eotContent = Arrays.asList("RUNVOL=" + runVol, "USER=" + user, "RUNDATE=" + runDate);
 
-        LOGGER.info("EOT file transmitted. Cleaning up temp files.");
+        LOGGER.info("Writing data to EOT file {}", eotFile.getAbsolutePath());
 
-        // Remove and rebuild the temp file to clear its contents
         try {
-            FileUtils.deleteQuietly(tempFile);
-            // Create file
-            FileUtils.touch(tempFile);
-            // Apply lock on file
-            lockTempFile();
+            FileUtils.writeLines(eotFile, eotContent, false);
         } catch (IOException ex) {
-            LOGGER.error("Unable to delete contents of the site temp file [{}], {}", tempFile, ex.getMessage());
-            ErrMsgDialog.show("Send Data Files", "Unable to clear the site Temp file");
+            LOGGER.info("Unable to save EOT file", ex);
+            listener.showError("File save error", "Unable to save EOT file");
             return false;
         }
+        return true;
+    }
 
-        LOGGER.info("File cleanup complete");
+    /**
+     * Runs an action for every chunk of a batch. Chunks run in parallel on a pool of at
+     * most submitThreads threads, apart from the transfers to RPD, which take turns.
+     *
+     * @param chunks the number of chunks
+     * @param action the action, given the chunk number
+     * @return the result of the action for each chunk
+     */
+    private boolean[] runChunks(int chunks, ChunkAction action) {
+        boolean[] results = new boolean[chunks];
+        if (chunks == 1) {
+            try {
+                results[0] = action.run(0);
+            } catch (IOException ex) {
+                LOGGER.error("Unable to update batch manifest, {}", ex.getMessage());
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(submitThreads, chunks), r -> {
+            Thread thread = new Thread(r, "submit-chunk");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                int chunk = i;
+                futures.add(pool.submit(() -> action.run(chunk)));
+            }
+            for (int i = 0; i < chunks; i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    LOGGER.error("Unable to send chunk " + (i + 1), ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.error("Interrupted while sending chunks");
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
 
-        return true;
+    /**
+     * Sends files to RPD. The application uses the shared SubmitJobClient.
+     */
+    interface RpdClient {
+        boolean trySubmit(File file);
+
+        RpdErrorResponse getErrorResponse();
     }
 
     /**
-     * Send to rpd.
+     * A step run for each DAT/EOT pair. The step records its progress in the batch
+     * manifest, which may fail.
+     */
+    @FunctionalInterface
+    private interface ChunkAction {
+        boolean run(int chunk) throws IOException;
+    }
+
+    /**
+     * Send to rpd. A failed transfer is retried before the error is shown. Each attempt
+     * holds the client until its error has been read, so the error shown always belongs
+     * to this file. The wait between attempts does not hold the client.
      *
      * @param file the data file
+     * @param listener told if the file cannot be sent
      * @return true, if successful
      */
-    private boolean sendToRpd(File file) {
-        SubmitJobClient sjc = SubmitJobClient.getInstance();
-
-        if (sjc.trySubmit(file)) {
-            return true;
+    private boolean sendToRpd(File file, SubmitListener listener) {
+        RpdErrorResponse rpdError = null;
+
+        for (int attempt = 1; attempt <= MAX_SEND_ATTEMPTS; attempt++) {
+            synchronized (RPD_CLIENT_LOCK) {
+                if (rpdClient.trySubmit(file)) {
+                    return true;
+                }
+                rpdError = rpdClient.getErrorResponse();
+            }
+            LOGGER.warn("Attempt {} of {} to send {} failed", attempt, MAX_SEND_ATTEMPTS, file.getName());
+            if (attempt < MAX_SEND_ATTEMPTS) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
         }
     
-        RpdErrorResponse rpdError = sjc.getErrorResponse();
         LOGGER.error(rpdError.toString());
-        ErrMsgDialog.show(rpdError.getCode(), rpdError.getMessage(), rpdError.getAction());
+        listener.showError(rpdError.getCode(), rpdError.getMessage(), rpdError.getAction());
         return false;
     }
 
     /**
-     * Sets the ReadOnly flag to lock the file.
+     * Replaces the client that sends files to RPD, so tests can run without one.
+     *
+     * @param rpdClient the client
      */
-    private void lockTempFile() {
-        LOGGER.debug("Setting lock on tmp file");
-        tempFile.setReadOnly();
-        LOGGER.debug("Lock set");
+    void setRpdClient(RpdClient rpdClient) {
+        this.rpdClient = rpdClient;
     }
 
     /**
-     * Unlocks the temp file by removing the ReadOnly flag
+     * Closes the journal and releases the lock on the temp file.
      */
-    public void unlockTempFile() {
-        LOGGER.debug("Removing lock on tmp file");
-        tempFile.setWritable(true);
-        LOGGER.debug("Lock removed");
+    public void close() {
+        journal.close();
+        siteLock.release();
     }
 
     /**
@@ -251,7 +585,7 @@ public class FileManager {
      * @return true, if successful
      */
     public boolean userHasRepoAccess() {
-        String repo = FilenameUtils.getFullPath(datFile.getAbsolutePath());
+        String repo = FilenameUtils.getFullPath(new File(datFile).getAbsolutePath());
         LOGGER.info("Checking user has repo access to {}", repo);
         String filename = DateUtils.timeStamp("ddMMyyHHmmss") + ".tmp";
         File testFile = new File(repo, filename);
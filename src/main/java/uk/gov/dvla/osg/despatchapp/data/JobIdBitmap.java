@@ -0,0 +1,223 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only compressed bitmap of numeric Job IDs, in the style of a Roaring bitmap, that
+ * is used straight from its serialized bytes, so it can be memory mapped from a file
+ * and checked without being loaded.
+ * <p>
+ * Job IDs are split on their upper bits into containers of 65536 Job IDs each. A
+ * container with at most {@value #ARRAY_MAX} Job IDs holds the lower 16 bits of each
+ * as a sorted array, a fuller one holds a plain bitmap of 8 KB. A lookup is a binary
+ * search of the container keys, then of the array or a single bit test.
+ * <p>
+ * Layout, big-endian: magic, version, container count, total Job IDs, then the key,
+ * data offset and Job ID count of each container, the container data, and a CRC of
+ * everything before it.
+ */
+class JobIdBitmap {
+
+    // "DJID"
+    private static final int MAGIC = 0x444A4944;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    // Largest container held as an array, beyond this a bitmap is smaller
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_BYTES = 65536 / 8;
+
+    private final ByteBuffer buffer;
+    private final int containers;
+    private final long cardinality;
+    private final int offsetsAt;
+    private final int countsAt;
+
+    private JobIdBitmap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.containers = buffer.getInt(8);
+        this.cardinality = buffer.getLong(12);
+        this.offsetsAt = HEADER_BYTES + containers * 4;
+        this.countsAt = offsetsAt + containers * 4;
+    }
+
+    /**
+     * Uses a serialized bitmap, checking that it is complete.
+     *
+     * @param buffer the serialized bitmap, e.g. a file mapped read only
+     * @return the bitmap
+     * @throws IllegalArgumentException if the bytes are not a complete bitmap
+     */
+    static JobIdBitmap wrap(ByteBuffer buffer) {
+        int size = buffer.limit();
+        if (size < HEADER_BYTES + 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("not a Job ID bitmap");
+        }
+        int containers = buffer.getInt(8);
+        if (containers < 0 || containers > (size - HEADER_BYTES) / 12) {
+            throw new IllegalArgumentException("container count does not fit");
+        }
+        if (crc(buffer, size - 4) != buffer.getInt(size - 4)) {
+            throw new IllegalArgumentException("checksum does not match");
+        }
+        return new JobIdBitmap(buffer);
+    }
+
+    /**
+     * Serializes a set of Job IDs.
+     *
+     * @param ids the Job IDs, sorted with no repeats
+     * @param count the number of Job IDs to take from the start of the array
+     * @return the serialized bitmap, ready to write or wrap
+     */
+    static ByteBuffer serialize(long[] ids, int count) {
+        // Size the containers first, so the buffer is allocated once
+        int containers = 0;
+        long dataBytes = 0;
+        for (int from = 0; from < count;) {
+            int to = containerEnd(ids, from, count);
+            dataBytes += containerBytes(to - from);
+            containers++;
+            from = to;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADER_BYTES + containers * 12L + dataBytes + 4));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(containers).putLong(count);
+        int offsetsAt = HEADER_BYTES + containers * 4;
+        int countsAt = offsetsAt + containers * 4;
+        int dataAt = countsAt + containers * 4;
+        int container = 0;
+        for (int from = 0; from < count; container++) {
+            int to = containerEnd(ids, from, count);
+            buffer.putInt(HEADER_BYTES + container * 4, (int) (ids[from] >>> 16));
+            buffer.putInt(offsetsAt + container * 4, dataAt);
+            buffer.putInt(countsAt + container * 4, to - from);
+            if (to - from <= ARRAY_MAX) {
+                for (int i = from; i < to; i++) {
+                    buffer.putChar(dataAt + (i - from) * 2, (char) ids[i]);
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    int low = (int) ids[i] & 0xFFFF;
+                    int word = dataAt + (low >>> 6) * 8;
+                    buffer.putLong(word, buffer.getLong(word) | (1L << low));
+                }
+            }
+            dataAt += containerBytes(to - from);
+            from = to;
+        }
+        buffer.putInt(dataAt, crc(buffer, dataAt));
+        buffer.clear();
+        return buffer;
+    }
+
+    private static int containerEnd(long[] ids, int from, int count) {
+        long key = ids[from] >>> 16;
+        int to = from + 1;
+        while (to < count && ids[to] >>> 16 == key) {
+            to++;
+        }
+        return to;
+    }
+
+    private static int containerBytes(int count) {
+        return count <= ARRAY_MAX ? count * 2 : BITMAP_BYTES;
+    }
+
+    private static int crc(ByteBuffer buffer, int length) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(0).limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Checks if a Job ID is in the bitmap. Safe to call from any thread.
+     *
+     * @param id the numeric Job ID
+     * @return true, if the Job ID is in the bitmap
+     */
+    boolean contains(long id) {
+        if (id < 0) {
+            return false;
+        }
+        int container = findContainer(id >>> 16);
+        if (container < 0) {
+            return false;
+        }
+        int low = (int) id & 0xFFFF;
+        int at = buffer.getInt(offsetsAt + container * 4);
+        int count = buffer.getInt(countsAt + container * 4);
+        if (count > ARRAY_MAX) {
+            return (buffer.getLong(at + (low >>> 6) * 8) & (1L << low)) != 0;
+        }
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = buffer.getChar(at + mid * 2);
+            if (value < low) {
+                lo = mid + 1;
+            } else if (value > low) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int findContainer(long key) {
+        int lo = 0;
+        int hi = containers - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long value = buffer.getInt(HEADER_BYTES + mid * 4) & 0xFFFFFFFFL;
+            if (value < key) {
+                lo = mid + 1;
+            } else if (value > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of Job IDs in the bitmap.
+     *
+     * @return the number of Job IDs
+     */
+    long cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Copies every Job ID out of the bitmap, in order.
+     *
+     * @param extra room to leave at the end of the array
+     * @return the Job IDs, followed by the extra room
+     */
+    long[] toArray(int extra) {
+        long[] ids = new long[Math.toIntExact(cardinality + extra)];
+        int n = 0;
+        for (int container = 0; container < containers; container++) {
+            long high = (buffer.getInt(HEADER_BYTES + container * 4) & 0xFFFFFFFFL) << 16;
+            int at = buffer.getInt(offsetsAt + container * 4);
+            int count = buffer.getInt(countsAt + container * 4);
+            if (count <= ARRAY_MAX) {
+                for (int i = 0; i < count; i++) {
+                    ids[n++] = high | buffer.getChar(at + i * 2);
+                }
+                continue;
+            }
+            for (int w = 0; w < BITMAP_BYTES / 8; w++) {
+                for (long word = buffer.getLong(at + w * 8); word != 0; word &= word - 1) {
+                    ids[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,201 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.ObservableListBase;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+
+/**
+ * The scanned items of a site, as shown in the ListView. Items are read from the site
+ * journal when the ListView asks for them, and only a small cache of them are held as
+ * objects, so the heap used does not grow with the size of the batch. The number of
+ * items is a counter, it is never worked out from the items themselves.
+ * <p>
+ * The journal is only changed through this list, so that the ListView is told what
+ * changed. The list cannot be changed through the List methods. Only used on the
+ * JavaFX thread.
+ * <p>
+ * Scans are written to the journal straight away, but are added to the list at most
+ * once per JavaFX pulse, as one change. During a burst of scans the ListView and the
+ * item count are then updated once per frame rather than once per scan.
+ * <p>
+ * A scan is only added to the list once the journal has synced it, so an item on screen
+ * has been saved as far as the site's durability mode promises. In group commit mode
+ * scans appear a group at a time, as each group reaches the disk.
+ */
+public class JournalList extends ObservableListBase<JobId> {
+
+    // Comfortably more than the rows of the ListView on screen
+    private static final int CACHE_SIZE = 256;
+
+    private final SiteJournal journal;
+    private final ReadOnlyIntegerWrapper count = new ReadOnlyIntegerWrapper();
+    // Items in the journal after those in the list, added at the next pulse
+    private int pending;
+    // Journal record number of each pending item, in order
+    private long[] pendingRecords = new long[64];
+    // Created on first use, as the JavaFX toolkit must be running
+    private AnimationTimer pulse;
+    private final Map<Integer, JobId> cache = new LinkedHashMap<Integer, JobId>(CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, JobId> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    JournalList(SiteJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public JobId get(int index) {
+        JobId jobId = cache.get(index);
+        if (jobId == null) {
+            try {
+                jobId = JobId.fromString(journal.record(index));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            cache.put(index, jobId);
+        }
+        return jobId;
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * The number of items, for binding to the GUI.
+     *
+     * @return the item count property
+     */
+    public ReadOnlyIntegerProperty countProperty() {
+        return count.getReadOnlyProperty();
+    }
+
+    /**
+     * Writes a scanned item to the journal. It is added to the end of the list at the
+     * first pulse after the journal has synced it, or straight away when not called on
+     * the JavaFX thread.
+     *
+     * @param jobId the scanned item
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void append(JobId jobId) throws IOException {
+        long record = journal.add(jobId.toString());
+        cache.put(count.get() + pending, jobId);
+        if (pending == pendingRecords.length) {
+            pendingRecords = Arrays.copyOf(pendingRecords, pending * 2);
+        }
+        pendingRecords[pending++] = record;
+        if (!Platform.isFxApplicationThread()) {
+            flush();
+            return;
+        }
+        if (pulse == null) {
+            pulse = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    show(synced());
+                }
+            };
+        }
+        if (pending == 1) {
+            pulse.start();
+        }
+    }
+
+    /**
+     * Adds every item written since the last pulse to the list, as a single change,
+     * whether or not the journal has synced it yet.
+     */
+    public void flush() {
+        show(pending);
+    }
+
+    /**
+     * Counts the pending items the journal has synced.
+     */
+    private int synced() {
+        long synced = journal.getSynced();
+        int items = 0;
+        while (items < pending && pendingRecords[items] <= synced) {
+            items++;
+        }
+        return items;
+    }
+
+    /**
+     * Adds the first pending items to the list, as a single change. The pulse keeps
+     * running while any are still waiting for the journal.
+     */
+    private void show(int items) {
+        if (pulse != null && items == pending) {
+            pulse.stop();
+        }
+        if (items == 0) {
+            return;
+        }
+        int from = count.get();
+        int to = from + items;
+        pending -= items;
+        System.arraycopy(pendingRecords, items, pendingRecords, 0, pending);
+        count.set(to);
+        beginChange();
+        nextAdd(from, to);
+        endChange();
+    }
+
+    /**
+     * Removes an item from the journal and the list.
+     *
+     * @param index the position of the item in the list
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void removeAt(int index) throws IOException {
+        flush();
+        JobId removed = get(index);
+        journal.remove(index);
+        // Later items have moved up a place
+        cache.clear();
+        count.set(count.get() - 1);
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+    }
+
+    /**
+     * Shows the journal again after it was changed as a whole, when it is read, frozen
+     * into a batch, or has a batch returned to it.
+     */
+    public void reload() {
+        if (pulse != null) {
+            pulse.stop();
+        }
+        pending = 0;
+        int oldSize = count.get();
+        int newSize = journal.size();
+        cache.clear();
+        count.set(newSize);
+        if (oldSize == 0 && newSize == 0) {
+            return;
+        }
+        // The old items are no longer in the journal to be read back
+        beginChange();
+        nextReplace(0, newSize, Collections.nCopies(oldSize, (JobId) null));
+        endChange();
+    }
+}
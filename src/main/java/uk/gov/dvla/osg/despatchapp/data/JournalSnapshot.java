@@ -0,0 +1,165 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Binary checkpoint of a {@link SiteJournal}: the file position and numeric Job ID of
+ * every live record, up to a point in the journal. When a site is opened the snapshot
+ * is loaded and only the journal written after that point is parsed.
+ * <p>
+ * The snapshot ends with a CRC of its contents, and holds a CRC of the journal bytes
+ * just before the point it covers, so a damaged snapshot, or one left over from a
+ * journal that has since been rewritten, is ignored and the whole journal is parsed.
+ */
+class JournalSnapshot {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    // "DSNP"
+    private static final int MAGIC = 0x44534E50;
+    private static final int VERSION = 1;
+    // Journal bytes covered by the anchor CRC
+    private static final int ANCHOR_BYTES = 4096;
+    private static final int BUFFER = 64 * 1024;
+
+    final long journalLength;
+    final int deadRecords;
+    final int count;
+    final long[] positions;
+    final long[] ids;
+
+    /**
+     * Instantiates a new snapshot.
+     *
+     * @param journalLength the length of the journal covered by the snapshot
+     * @param deadRecords the number of dead records in that part of the journal
+     * @param count the number of live records
+     * @param positions the file position of each live record, in order
+     * @param ids the numeric Job ID of each live record, in order
+     */
+    JournalSnapshot(long journalLength, int deadRecords, int count, long[] positions, long[] ids) {
+        this.journalLength = journalLength;
+        this.deadRecords = deadRecords;
+        this.count = count;
+        this.positions = positions;
+        this.ids = ids;
+    }
+
+    /**
+     * Writes the snapshot to a file. The file is written in place, callers write to a
+     * temporary file and move it into place once it is complete.
+     *
+     * @param target the file to write
+     * @param journal the journal the snapshot was taken from
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void write(Path target, FileChannel journal) throws IOException {
+        int anchor = anchorCrc(journal, journalLength);
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(target, CREATE, TRUNCATE_EXISTING, WRITE), BUFFER), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(journalLength);
+            out.writeInt(anchor);
+            out.writeInt(deadRecords);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(positions[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeLong(ids[i]);
+            }
+            out.writeLong(crc.getValue());
+        }
+    }
+
+    /**
+     * Loads a snapshot, checking it against the journal.
+     *
+     * @param file the snapshot file
+     * @param journal the journal
+     * @param journalSize the size of the journal
+     * @return the snapshot, or null if there is none or it cannot be used
+     */
+    static JournalSnapshot load(Path file, FileChannel journal, long journalSize) {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return invalid(file, "not a journal snapshot");
+            }
+            long writtenAt = in.readLong();
+            long journalLength = in.readLong();
+            int anchor = in.readInt();
+            int deadRecords = in.readInt();
+            int count = in.readInt();
+            if (journalLength > journalSize || count < 0 || count > journalLength / SiteJournal.RECORD_BYTES) {
+                return invalid(file, "it does not fit the journal");
+            }
+            long[] positions = new long[count];
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = in.readLong();
+            }
+            for (int i = 0; i < count; i++) {
+                ids[i] = in.readLong();
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                return invalid(file, "checksum does not match");
+            }
+            if (anchorCrc(journal, journalLength) != anchor) {
+                return invalid(file, "the journal has changed");
+            }
+            LOGGER.debug("Loaded snapshot [{}] of {} records taken {}", file, count, Instant.ofEpochMilli(writtenAt));
+            return new JournalSnapshot(journalLength, deadRecords, count, positions, ids);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            return invalid(file, ex.toString());
+        }
+    }
+
+    private static JournalSnapshot invalid(Path file, String reason) {
+        LOGGER.warn("Ignoring journal snapshot [{}], {}", file, reason);
+        return null;
+    }
+
+    /**
+     * Calculates the CRC of the journal bytes just before the end of the snapshot.
+     */
+    private static int anchorCrc(FileChannel journal, long journalLength) throws IOException {
+        long from = Math.max(0, journalLength - ANCHOR_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (journalLength - from));
+        while (buffer.hasRemaining()) {
+            if (journal.read(buffer, from + buffer.position()) < 0) {
+                break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return (int) crc.getValue();
+    }
+}
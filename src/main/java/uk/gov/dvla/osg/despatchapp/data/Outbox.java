@@ -0,0 +1,195 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.utilities.ContentHash;
+
+/**
+ * Batches waiting to be sent to RPD, kept in the repository directory so they survive a
+ * restart. Each batch has its own folder named after the site and the time it was
+ * frozen. A ledger of every DAT file that RPD has accepted, by batch and chunk, lets a
+ * resent batch skip DAT files that RPD already has. The content hash of each DAT file is
+ * kept with it, so a file is only skipped if the one written for the resend is
+ * byte-for-byte the one that was sent. Another batch holding the same Job IDs, e.g. a
+ * job despatched again on a later day, is always sent.
+ */
+public class Outbox {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    // Number of sent DAT files kept in the ledger
+    private static final int LEDGER_SIZE = 10_000;
+    // Format of the time stamp in each batch folder name
+    private static final DateTimeFormatter TIME_STAMP = DateTimeFormatter.ofPattern("ddMMyyyy_HHmmss");
+
+    private final Path dir;
+    private final String site;
+    private final Path ledgerFile;
+    // Content hash of each sent DAT file, by batch time stamp and chunk
+    private final Map<String, String> sentHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates the outbox for a site.
+     *
+     * @param dir the outbox folder, shared by all sites
+     * @param site the site name
+     */
+    public Outbox(Path dir, String site) {
+        this.dir = dir;
+        this.site = site;
+        this.ledgerFile = dir.resolve("sent-" + site + ".log");
+    }
+
+    /**
+     * Creates a new batch folder for the site.
+     *
+     * @param timeStamp the time the batch was frozen
+     * @param user the user submitting the batch
+     * @param maxRunVol the maximum number of Job IDs in each DAT file
+     * @return the batch
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    Batch create(String timeStamp, String user, int maxRunVol) throws IOException {
+        return Batch.create(dir.resolve(site + "_" + timeStamp), timeStamp, user, maxRunVol);
+    }
+
+    /**
+     * Loads the sent ledger and every batch this site left in the outbox.
+     *
+     * @return the batches, oldest first
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    List<Batch> load() throws IOException {
+        Files.createDirectories(dir);
+        loadLedger();
+        List<Batch> batches = new ArrayList<>();
+        Map<Batch, LocalDateTime> frozen = new HashMap<>();
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(dir, site + "_*")) {
+            for (Path folder : folders) {
+                if (!Files.isDirectory(folder)) {
+                    continue;
+                }
+                try {
+                    Batch batch = Batch.load(folder);
+                    batches.add(batch);
+                    frozen.put(batch, frozenAt(batch));
+                } catch (IOException | IllegalArgumentException ex) {
+                    LOGGER.error("Unable to read outbox batch {}, {}", folder, ex.getMessage());
+                }
+            }
+        }
+        batches.sort(Comparator.comparing(frozen::get));
+        return batches;
+    }
+
+    /**
+     * The time a batch was frozen. Folder names start with the day, so they do not sort
+     * in time order across months and years. A batch with an unreadable time stamp is
+     * sent last.
+     */
+    private static LocalDateTime frozenAt(Batch batch) {
+        try {
+            return LocalDateTime.parse(batch.getTimeStamp(), TIME_STAMP);
+        } catch (DateTimeParseException ex) {
+            LOGGER.warn("Outbox batch {} has an unreadable time stamp", batch.getDirectory());
+            return LocalDateTime.MAX;
+        }
+    }
+
+    /**
+     * Removes a batch from the outbox once it has been sent, or returned to the temp file.
+     *
+     * @param batch the batch
+     */
+    void delete(Batch batch) {
+        FileUtils.deleteQuietly(batch.getDirectory().toFile());
+    }
+
+    /**
+     * Checks if the DAT file of a chunk has already been sent.
+     *
+     * @param timeStamp the time the batch was frozen
+     * @param chunk the chunk number, from 0
+     * @param hash the content hash of the DAT file written for this attempt
+     * @return true, if RPD already has this file for the chunk
+     */
+    boolean isSent(String timeStamp, int chunk, String hash) {
+        String sentHash = sentHashes.get(key(timeStamp, chunk));
+        if (sentHash != null && !sentHash.equals(hash)) {
+            LOGGER.warn("Chunk {} of batch {} was sent with different content, sending it again", chunk + 1, timeStamp);
+        }
+        return hash.equals(sentHash);
+    }
+
+    /**
+     * Adds the DAT file of a chunk to the ledger once RPD has accepted it.
+     *
+     * @param timeStamp the time the batch was frozen
+     * @param chunk the chunk number, from 0
+     * @param hash the content hash of the DAT file
+     * @param fileName the DAT file name, kept for reference
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    synchronized void recordSent(String timeStamp, int chunk, String hash, String fileName) throws IOException {
+        if (!hash.equals(sentHashes.put(key(timeStamp, chunk), hash))) {
+            String line = timeStamp + "\t" + (chunk + 1) + "\t" + hash + "\t" + fileName + FileManager.NEWLINE;
+            Files.write(ledgerFile, line.getBytes(FileManager.ENCODING), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    private static String key(String timeStamp, int chunk) {
+        return timeStamp + "\t" + (chunk + 1);
+    }
+
+    /**
+     * Reads the ledger, trimming it to the most recent entries.
+     */
+    private void loadLedger() throws IOException {
+        sentHashes.clear();
+        if (!Files.exists(ledgerFile)) {
+            return;
+        }
+        List<String> lines = Files.readAllLines(ledgerFile, FileManager.ENCODING);
+        if (lines.size() > LEDGER_SIZE) {
+            lines = new ArrayList<>(lines.subList(lines.size() - LEDGER_SIZE, lines.size()));
+            Files.write(ledgerFile, lines, FileManager.ENCODING);
+        }
+        for (String line : lines) {
+            // Time stamp, chunk number, hash and file name
+            String[] fields = line.split("\t");
+            if (fields.length == 4) {
+                sentHashes.put(fields[0] + "\t" + fields[1], fields[2]);
+            } else if (!line.isEmpty()) {
+                LOGGER.warn("Skipping unreadable line [{}] in sent ledger {}", line, ledgerFile);
+            }
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 hash of a file.
+     *
+     * @param file the file
+     * @return the hash as hex digits
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static String hash(Path file) throws IOException {
+        return ContentHash.sha256(file);
+    }
+
+}
@@ -0,0 +1,20 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a site cannot be opened because another application holds its lock.
+ */
+public class SiteInUseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new exception.
+     *
+     * @param message who holds the site
+     */
+    public SiteInUseException(String message) {
+        super(message);
+    }
+}
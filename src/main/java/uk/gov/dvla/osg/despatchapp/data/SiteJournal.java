@@ -0,0 +1,1205 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.Durability;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
+
+/**
+ * Append-only journal behind the site temp file. A plain line is an ADD record, so a
+ * journal without removals is identical to the original temp file format. A line
+ * starting with the TOMBSTONE marker is a REMOVE record for the line that follows the
+ * marker. The channel is kept open between records, and removed records are only
+ * purged by the background compactor once enough of them have built up.
+ * <p>
+ * Every ADD record is the same length, so the journal keeps only the file position of
+ * each live record and reads a record back when it is asked for. Live records are in
+ * the order they were added, which is also their order in the file. Lines that are not
+ * valid records are logged and skipped, and are dropped when the journal is compacted.
+ * Removing a record shifts the positions after it up a place, which is O(n) in memory,
+ * a few milliseconds at a million records. The write to the file is O(1).
+ * Lines ending in CRLF, as written by the temp file rewrite of earlier versions on
+ * Windows, are read without the CR, and are written back with LF when compacted.
+ * <p>
+ * The positions and numeric Job IDs of the live records are checkpointed to a
+ * {@link JournalSnapshot} in the background, so opening a site only parses the records
+ * written since the last checkpoint.
+ * <p>
+ * How far a record is saved before it counts as synced depends on the
+ * {@link Durability} of the site. Records are numbered as they are written, and
+ * {@link #getSynced()} tells the caller which of them are safe to acknowledge.
+ */
+public class SiteJournal {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    static final char TOMBSTONE = '-';
+    private static final byte CR = '\r';
+    // An ADD record and its newline
+    static final int RECORD_BYTES = JobId.RECORD_LENGTH + 1;
+    // Number of dead records (removed ADDs plus their tombstones) that triggers a rewrite
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final int READ_BUFFER = 64 * 1024;
+    // Smallest and largest chunk of the file parsed by one thread when it is opened
+    private static final long MIN_CHUNK_BYTES = 1024 * 1024;
+    private static final long MAX_CHUNK_BYTES = 256 * 1024 * 1024;
+    // Unreadable lines kept to be reported, any more are only counted
+    private static final int MAX_ANOMALIES = 100;
+    // Records added or removed since the last checkpoint that trigger a new one
+    private static final int CHECKPOINT_CHANGES = 5000;
+    private static final long CLOSE_WAIT_SECONDS = 10;
+    private static final Histogram APPEND_TIME = Metrics.timer("journal.append");
+    private static final Histogram REMOVE_TIME = Metrics.timer("journal.remove");
+    private static final Histogram CHECKPOINT_TIME = Metrics.timer("journal.checkpoint");
+    private static final Histogram SYNC_TIME = Metrics.timer("journal.sync");
+    private static final Histogram SYNC_RECORDS = Metrics.histogram("journal.sync.records", "records");
+
+    private final Path file;
+    private final Path compactTmpFile;
+    private final Path snapshotFile;
+    private final Path snapshotTmpFile;
+    private final Durability durability;
+    private final long groupCommitMillis;
+    private final int groupCommitRecords;
+    // Forces group commits to disk, only used in GROUP_COMMIT mode
+    private final ScheduledExecutorService syncer;
+    // Runs compactions and checkpoints, one at a time
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel channel;
+    // File position of each live ADD record, in the order they were added
+    private long[] positions = new long[1024];
+    // Numeric Job ID of each live ADD record, in step with the positions
+    private long[] ids = new long[1024];
+    private int liveRecords;
+    private int deadRecords;
+    private boolean compactionQueued;
+    private int changesSinceCheckpoint;
+    private boolean checkpointQueued;
+    // Changed whenever records move in the file, so an older checkpoint is not saved
+    private int generation;
+    private final List<String> anomalies = new ArrayList<>();
+    // Number of records written this session, ADDs and REMOVEs alike
+    private long written;
+    // Number of those records known to be as durable as the mode asks
+    private final AtomicLong synced = new AtomicLong();
+    private boolean syncQueued;
+    private boolean syncNowQueued;
+
+    /**
+     * Instantiates a new journal for the given temp file, leaving records to be flushed
+     * by the operating system. Nothing is opened until {@link #open()} is called.
+     *
+     * @param file the site temp file
+     */
+    public SiteJournal(Path file) {
+        this(file, Durability.OS_BUFFERED, 0, 0);
+    }
+
+    /**
+     * Instantiates a new journal for the given temp file. Nothing is opened until
+     * {@link #open()} is called.
+     *
+     * @param file the site temp file
+     * @param durability how far records are saved before they count as synced
+     * @param groupCommitMillis longest time a record waits for a group commit
+     * @param groupCommitRecords number of waiting records that forces a group commit straight away
+     */
+    public SiteJournal(Path file, Durability durability, long groupCommitMillis, int groupCommitRecords) {
+        this.file = file;
+        this.durability = durability;
+        this.groupCommitMillis = Math.max(1, groupCommitMillis);
+        this.groupCommitRecords = Math.max(1, groupCommitRecords);
+        this.syncer = durability != Durability.GROUP_COMMIT ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactTmpFile = Paths.get(file + ".compact.tmp");
+        this.snapshotFile = Paths.get(file + ".snapshot");
+        this.snapshotTmpFile = Paths.get(file + ".snapshot.tmp");
+    }
+
+    /**
+     * Opens the journal for appending, creating it if necessary, and replays its
+     * records. A REMOVE cancels every earlier ADD of the same record.
+     * <p>
+     * A damaged tail left by a power failure is cut off first. If there is a usable
+     * snapshot, only the part of the file written after it is parsed. That part is
+     * memory mapped and split into chunks at line boundaries, and the chunks are parsed
+     * in parallel straight from the mapped bytes. Only tombstones and unreadable lines
+     * are turned into Strings.
+     *
+     * @return the numeric Job IDs of the live records, in order
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized long[] open() throws IOException {
+        long started = System.nanoTime();
+        recoverCompaction();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, CREATE, READ, WRITE);
+        repairTail();
+        long size = channel.size();
+        JournalSnapshot snapshot = JournalSnapshot.load(snapshotFile, channel, size);
+        long from = snapshot == null ? 0 : snapshot.journalLength;
+
+        List<ParsedChunk> chunks;
+        try {
+            chunks = splitAtLines(from, size).parallelStream().map(this::parse).collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        // Join the snapshot and chunks in file order, a later REMOVE replaces an earlier one
+        int fromSnapshot = snapshot == null ? 0 : snapshot.count;
+        int candidates = fromSnapshot + chunks.stream().mapToInt(chunk -> chunk.count).sum();
+        positions = new long[Math.max(1024, candidates)];
+        ids = new long[positions.length];
+        Map<String, Long> removed = new HashMap<>();
+        liveRecords = fromSnapshot;
+        deadRecords = snapshot == null ? 0 : snapshot.deadRecords;
+        anomalies.clear();
+        if (snapshot != null) {
+            System.arraycopy(snapshot.positions, 0, positions, 0, fromSnapshot);
+            System.arraycopy(snapshot.ids, 0, ids, 0, fromSnapshot);
+        }
+        for (ParsedChunk chunk : chunks) {
+            System.arraycopy(chunk.positions, 0, positions, liveRecords, chunk.count);
+            System.arraycopy(chunk.ids, 0, ids, liveRecords, chunk.count);
+            liveRecords += chunk.count;
+            deadRecords += chunk.removed.size() + chunk.tombstones + chunk.anomalies.size();
+            removed.putAll(chunk.removed);
+            for (String line : chunk.anomalies) {
+                if (anomalies.size() < MAX_ANOMALIES) {
+                    anomalies.add(line);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            dropRemoved(removed);
+        }
+        channel.position(size);
+
+        LOGGER.info("Journal [{}] read in {} ms, {} live and {} dead records, {} from the snapshot and {} bytes parsed in {} chunks",
+                file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), liveRecords, deadRecords,
+                fromSnapshot, size - from, chunks.size());
+        // Checkpoint now if anything was parsed, so the next open is quick
+        changesSinceCheckpoint = size > from ? CHECKPOINT_CHANGES : 0;
+        scheduleCompaction();
+        scheduleCheckpoint();
+        return Arrays.copyOf(ids, liveRecords);
+    }
+
+    /**
+     * Appends an ADD record. In {@link Durability#FSYNC} mode the record is on disk when
+     * this returns, and if it cannot be forced to disk it is cut off again.
+     *
+     * @param record the record
+     * @return the number of the record, to compare with {@link #getSynced()}
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws IllegalArgumentException if the record is not a Job ID record
+     */
+    public synchronized long add(String record) throws IOException {
+        long id = JobId.parseRecordId(record);
+        if (id < 0) {
+            throw new IllegalArgumentException("Record is not valid - [" + record + "]");
+        }
+        long started = System.nanoTime();
+        long position = write(record);
+        try {
+            committed(1);
+        } catch (IOException ex) {
+            channel.truncate(position);
+            throw ex;
+        }
+        appendPosition(position, id);
+        APPEND_TIME.recordSince(started);
+        changesSinceCheckpoint++;
+        scheduleCheckpoint();
+        return written;
+    }
+
+    /**
+     * Appends an ADD record for each Job ID, all stamped with the current time. The
+     * records are built straight into a buffer and written a block at a time, rather
+     * than one write per record. If any block cannot be written, or in
+     * {@link Durability#FSYNC} mode forced to disk, the file is cut back to where it was
+     * and none of the records are added.
+     *
+     * @param newIds the numeric Job IDs
+     * @param count the number of Job IDs to add from the start of the array
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void addAll(long[] newIds, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (!JobId.isValid(newIds[i])) {
+                throw new IllegalArgumentException("Job ID is not valid - [" + newIds[i] + "]");
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        if (channel == null) {
+            throw new IOException("Journal [" + file + "] is not open");
+        }
+        // Tab, time stamp and newline, the same for every record
+        String record = JobId.newInstance(newIds[0]).toString();
+        byte[] stamp = (record.substring(record.indexOf('\t')) + FileManager.NEWLINE).getBytes(FileManager.ENCODING);
+        int idLength = RECORD_BYTES - stamp.length;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER / RECORD_BYTES * RECORD_BYTES);
+        long start = channel.position();
+        try {
+            for (int i = 0; i < count; i++) {
+                long id = newIds[i];
+                for (int d = idLength - 1; d >= 0; d--) {
+                    buffer.put(buffer.position() + d, (byte) ('0' + id % 10));
+                    id /= 10;
+                }
+                buffer.position(buffer.position() + idLength);
+                buffer.put(stamp);
+                if (!buffer.hasRemaining() || i == count - 1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            committed(count);
+        } catch (IOException ex) {
+            channel.truncate(start);
+            throw ex;
+        }
+        for (int i = 0; i < count; i++) {
+            appendPosition(start + (long) i * RECORD_BYTES, newIds[i]);
+        }
+        changesSinceCheckpoint += count;
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Appends a REMOVE record for a live record. The matching ADD record stays in the
+     * file until the journal is next compacted. The positions of later records shift up
+     * a place in memory, so this is O(n) in the number of live records.
+     *
+     * @param index the position of the record in the list of live records
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void remove(int index) throws IOException {
+        long started = System.nanoTime();
+        write(TOMBSTONE + record(index));
+        committed(1);
+        REMOVE_TIME.recordSince(started);
+        System.arraycopy(positions, index + 1, positions, index, liveRecords - index - 1);
+        System.arraycopy(ids, index + 1, ids, index, liveRecords - index - 1);
+        liveRecords--;
+        deadRecords += 2;
+        changesSinceCheckpoint++;
+        scheduleCompaction();
+        scheduleCheckpoint();
+    }
+
+    /**
+     * Reads a live record back from the file.
+     *
+     * @param index the position of the record in the list of live records
+     * @return the record
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized String record(int index) throws IOException {
+        if (index < 0 || index >= liveRecords) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + liveRecords);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(JobId.RECORD_LENGTH);
+        long position = positions[index];
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Journal [" + file + "] ends inside record " + index);
+            }
+        }
+        return new String(buffer.array(), FileManager.ENCODING);
+    }
+
+    /**
+     * Reads every live record in order, in a single pass through the file.
+     *
+     * @param visitor given each live record
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void forEachRecord(RecordVisitor visitor) throws IOException {
+        if (liveRecords == 0) {
+            return;
+        }
+        forEachRecord(channel, positions, liveRecords, channel.size(), visitor);
+    }
+
+    /**
+     * Reads the records at the given positions in a single pass through the file.
+     *
+     * @param in the journal channel
+     * @param at the file positions of the records, in file order
+     * @param count the number of records
+     * @param to the end of the last record
+     * @param visitor given each record
+     */
+    private void forEachRecord(FileChannel in, long[] at, int count, long to, RecordVisitor visitor) throws IOException {
+        int[] next = new int[1];
+        forEachLine(in, at[0], to, (position, length, line) -> {
+            if (next[0] < count && at[next[0]] == position) {
+                next[0]++;
+                visitor.visit(line);
+            }
+        });
+    }
+
+    /**
+     * Gets the number of live records.
+     *
+     * @return the number of live records
+     */
+    public synchronized int size() {
+        return liveRecords;
+    }
+
+    /**
+     * Gets the lines found when the journal was opened that are not valid records.
+     *
+     * @return the first {@value #MAX_ANOMALIES} unreadable lines
+     */
+    public synchronized List<String> getAnomalies() {
+        return new ArrayList<>(anomalies);
+    }
+
+    /**
+     * Discards every record in the journal.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void clear() throws IOException {
+        discardSnapshot();
+        channel.truncate(0);
+        channel.position(0);
+        liveRecords = 0;
+        deadRecords = 0;
+        // Nothing is left to sync
+        synced.accumulateAndGet(written, Math::max);
+    }
+
+    /**
+     * Gets how many of the records written this session are as durable as the
+     * {@link Durability} mode asks. A record returned by {@link #add(String)} with a
+     * number no greater than this can be acknowledged. Safe to call from any thread.
+     *
+     * @return the number of synced records
+     */
+    public long getSynced() {
+        return synced.get();
+    }
+
+    /**
+     * Moves every live record into a snapshot file and empties the journal, so the next
+     * batch can be scanned while the snapshot is submitted. The snapshot is complete on
+     * disk before the journal is cleared. A journal without REMOVE records is already in
+     * the snapshot layout, so it is copied channel to channel without being decoded.
+     *
+     * @param target the snapshot file
+     * @return the number of records in the snapshot
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized int rollover(Path target) throws IOException {
+        Path tmp = Paths.get(target + ".tmp");
+        if (deadRecords == 0) {
+            try (FileChannel out = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                long size = channel.size();
+                for (long position = 0; position < size;) {
+                    position += channel.transferTo(position, size - position, out);
+                }
+                out.force(false);
+            }
+        } else {
+            writeLiveRecords(tmp);
+        }
+        Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        int records = liveRecords;
+        clear();
+        return records;
+    }
+
+    /**
+     * Appends every record in a snapshot file, as ADD records, to the end of the journal.
+     *
+     * @param source the snapshot file
+     * @return the number of records added
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized int restore(Path source) throws IOException {
+        long start = channel.position();
+        long size;
+        try (FileChannel in = FileChannel.open(source, READ)) {
+            size = in.size();
+            for (long position = 0; position < size;) {
+                position += channel.transferFrom(in, start + position, size - position);
+            }
+            channel.position(start + size);
+        }
+        int before = liveRecords;
+        forEachLine(channel, start, start + size, this::addPosition);
+        committed(liveRecords - before);
+        changesSinceCheckpoint += liveRecords - before;
+        scheduleCheckpoint();
+        return liveRecords - before;
+    }
+
+    /**
+     * Lets a running compaction or checkpoint finish, saves a last checkpoint and
+     * releases the channel. The background thread is not interrupted, as interrupting
+     * a thread that is using the channel would close it.
+     */
+    public void close() {
+        compactor.shutdown();
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        try {
+            compactor.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS);
+            if (syncer != null) {
+                syncer.awaitTermination(CLOSE_WAIT_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel == null) {
+                return;
+            }
+            if (durability != Durability.OS_BUFFERED && synced.get() < written) {
+                try {
+                    channel.force(false);
+                } catch (IOException ex) {
+                    LOGGER.error("Unable to sync journal [{}], {}", file, ex.getMessage());
+                }
+            }
+            if (changesSinceCheckpoint > 0) {
+                try {
+                    checkpoint();
+                } catch (IOException ex) {
+                    LOGGER.error("Unable to checkpoint journal [{}], {}", file, ex.getMessage());
+                }
+            }
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOGGER.error("Unable to close journal [{}], {}", file, ex.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Saves the positions and Job IDs of the live records to the snapshot file. The
+     * snapshot is written without holding the journal, and is only moved into place if
+     * no record has moved in the file meanwhile.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void checkpoint() throws IOException {
+        long started = System.nanoTime();
+        JournalSnapshot snapshot;
+        int snapshotGeneration;
+        synchronized (this) {
+            checkpointQueued = false;
+            if (channel == null) {
+                return;
+            }
+            snapshot = new JournalSnapshot(channel.position(), deadRecords, liveRecords,
+                    Arrays.copyOf(positions, liveRecords), Arrays.copyOf(ids, liveRecords));
+            snapshotGeneration = generation;
+            changesSinceCheckpoint = 0;
+        }
+        snapshot.write(snapshotTmpFile, channel);
+        synchronized (this) {
+            if (snapshotGeneration != generation || channel == null) {
+                Files.deleteIfExists(snapshotTmpFile);
+                return;
+            }
+            Files.move(snapshotTmpFile, snapshotFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        CHECKPOINT_TIME.recordSince(started);
+        LOGGER.debug("Journal [{}] checkpointed with {} records", file, snapshot.count);
+    }
+
+    /**
+     * Rewrites the journal so that it holds only live ADD records. The live records are
+     * copied to a new file without holding the journal, so scanning carries on while it
+     * is written. The journal is then held only to add the records written meanwhile and
+     * to move the new file into place, and is left alone if it was cleared or rolled
+     * over in the meantime. Records keep their place in the list, only their file
+     * positions change. The new file replaces the journal in one move, so an
+     * interrupted compaction leaves the journal as it was.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void compact() throws IOException {
+        FileChannel source;
+        long[] copied;
+        long copiedTo;
+        int copiedDead;
+        int copiedGeneration;
+        synchronized (this) {
+            compactionQueued = false;
+            if (channel == null || deadRecords < COMPACT_THRESHOLD) {
+                return;
+            }
+            LOGGER.info("Compacting journal [{}], {} live records, {} dead records", file, liveRecords, deadRecords);
+            source = channel;
+            copied = Arrays.copyOf(positions, liveRecords);
+            copiedTo = channel.position();
+            copiedDead = deadRecords;
+            copiedGeneration = generation;
+        }
+
+        try {
+            writeRecords(source, copied, copied.length, copiedTo, compactTmpFile);
+        } catch (IOException ex) {
+            synchronized (this) {
+                Files.deleteIfExists(compactTmpFile);
+                if (channel == null || generation != copiedGeneration) {
+                    // The journal was closed or emptied while it was being read
+                    return;
+                }
+            }
+            throw ex;
+        }
+
+        synchronized (this) {
+            if (channel == null || generation != copiedGeneration) {
+                Files.deleteIfExists(compactTmpFile);
+                return;
+            }
+            long imageLength = (long) copied.length * RECORD_BYTES;
+            long size = channel.position();
+            boolean moved = false;
+            try {
+                // Records written since the live records were copied go on the end as they are
+                try (FileChannel out = FileChannel.open(compactTmpFile, WRITE)) {
+                    for (long position = copiedTo; position < size;) {
+                        position += channel.transferTo(position, size - position, out.position(imageLength + position - copiedTo));
+                    }
+                    out.force(false);
+                }
+                discardSnapshot();
+                channel.close();
+                Files.move(compactTmpFile, file, REPLACE_EXISTING, ATOMIC_MOVE);
+                moved = true;
+            } finally {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(file, READ, WRITE);
+                    channel.position(channel.size());
+                }
+                if (!moved) {
+                    Files.deleteIfExists(compactTmpFile);
+                }
+            }
+            synced.accumulateAndGet(written, Math::max);
+
+            // Both lists are in file order, so each record is found by moving along the copy
+            for (int i = 0, c = 0; i < liveRecords; i++) {
+                if (positions[i] >= copiedTo) {
+                    positions[i] += imageLength - copiedTo;
+                } else {
+                    while (copied[c] != positions[i]) {
+                        c++;
+                    }
+                    positions[i] = (long) c * RECORD_BYTES;
+                }
+            }
+            // Only the records removed since the copy are left dead
+            deadRecords -= copiedDead;
+            LOGGER.info("Journal [{}] compacted", file);
+            changesSinceCheckpoint = CHECKPOINT_CHANGES;
+            scheduleCheckpoint();
+        }
+    }
+
+    /**
+     * Queues a compaction on the background thread once the dead records pass the
+     * threshold.
+     */
+    private void scheduleCompaction() {
+        if (compactionQueued || deadRecords < COMPACT_THRESHOLD) {
+            return;
+        }
+        compactionQueued = true;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException ex) {
+                LOGGER.error("Unable to compact journal [{}], {}", file, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Queues a checkpoint on the background thread once enough records have changed
+     * since the last one.
+     */
+    private void scheduleCheckpoint() {
+        if (checkpointQueued || changesSinceCheckpoint < CHECKPOINT_CHANGES || compactor.isShutdown()) {
+            return;
+        }
+        checkpointQueued = true;
+        compactor.execute(() -> {
+            try {
+                checkpoint();
+            } catch (IOException ex) {
+                LOGGER.error("Unable to checkpoint journal [{}], {}", file, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Makes records just written as durable as the mode asks. In
+     * {@link Durability#GROUP_COMMIT} mode they are left for the next group commit.
+     */
+    private void committed(int records) throws IOException {
+        switch (durability) {
+        case FSYNC:
+            long started = System.nanoTime();
+            channel.force(false);
+            SYNC_TIME.recordSince(started);
+            written += records;
+            synced.set(written);
+            break;
+        case GROUP_COMMIT:
+            written += records;
+            scheduleSync();
+            break;
+        default:
+            written += records;
+            synced.set(written);
+        }
+    }
+
+    /**
+     * Queues a group commit on the sync thread. It runs straight away once enough
+     * records are waiting, otherwise after the group commit wait, so every record
+     * written in the meantime is synced by the same force.
+     */
+    private void scheduleSync() {
+        if (syncer.isShutdown()) {
+            return;
+        }
+        if (!syncNowQueued && written - synced.get() >= groupCommitRecords) {
+            syncNowQueued = true;
+            syncer.execute(this::groupCommit);
+        } else if (!syncQueued) {
+            syncQueued = true;
+            syncer.schedule(this::groupCommit, groupCommitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forces every record written so far to disk. The journal is not held while the
+     * channel is forced, so scanning carries on and the records written meanwhile wait
+     * for the next group commit.
+     */
+    private void groupCommit() {
+        FileChannel forced;
+        long target;
+        synchronized (this) {
+            syncQueued = false;
+            syncNowQueued = false;
+            target = written;
+            forced = channel;
+        }
+        long from = synced.get();
+        if (forced == null || target <= from) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            forced.force(false);
+        } catch (ClosedChannelException ex) {
+            return;
+        } catch (IOException ex) {
+            LOGGER.error("Unable to sync journal [{}], {}", file, ex.getMessage());
+            synchronized (this) {
+                scheduleSync();
+            }
+            return;
+        }
+        SYNC_TIME.recordSince(started);
+        SYNC_RECORDS.record(target - from);
+        synced.accumulateAndGet(target, Math::max);
+    }
+
+    /**
+     * Deletes the snapshot before records move in the file, as its positions would no
+     * longer be right.
+     */
+    private void discardSnapshot() throws IOException {
+        generation++;
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    /**
+     * A power failure can leave part of a record, or a run of zero bytes, at the end of
+     * the file. The damaged tail is cut back to the end of the last complete line, so
+     * the next record is not written onto it. A last line that is a whole record missing
+     * only its newline is kept.
+     */
+    private void repairTail() throws IOException {
+        long size = channel.size();
+        long end = size;
+        long lineStart = -1;
+        boolean zeros = true;
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        for (long blockEnd = size; blockEnd > 0 && lineStart < 0;) {
+            long blockStart = Math.max(0, blockEnd - READ_BUFFER);
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining() && channel.read(buffer, blockStart + buffer.position()) >= 0) {
+                // read the whole block
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                byte b = buffer.get(i);
+                if (zeros && b == 0) {
+                    end = blockStart + i;
+                    continue;
+                }
+                zeros = false;
+                if (b == '\n') {
+                    lineStart = blockStart + i + 1;
+                    break;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        lineStart = Math.max(0, lineStart);
+        if (lineStart == size) {
+            return;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) Math.min(end - lineStart, READ_BUFFER));
+        channel.read(tail, lineStart);
+        int tailLength = tail.position();
+        if (tailLength > 0 && tail.get(tailLength - 1) == CR) {
+            tailLength--;
+        }
+        String partial = new String(tail.array(), 0, tailLength, FileManager.ENCODING);
+        if (tailLength == JobId.RECORD_LENGTH && JobId.parseRecordId(partial) >= 0) {
+            LOGGER.warn("Journal [{}] ends without a newline, adding one after [{}]", file, partial);
+            channel.truncate(end);
+            channel.write(ByteBuffer.wrap(FileManager.NEWLINE.getBytes(FileManager.ENCODING)), end);
+        } else {
+            LOGGER.warn("Journal [{}] has a damaged tail of {} bytes, cutting off [{}]", file, size - lineStart, partial);
+            channel.truncate(lineStart);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * A compaction or checkpoint that was stopped part way through leaves its new file
+     * behind, which is discarded as the journal was never touched.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void recoverCompaction() throws IOException {
+        Files.deleteIfExists(compactTmpFile);
+        Files.deleteIfExists(snapshotTmpFile);
+    }
+
+    private void writeLiveRecords(Path target) throws IOException {
+        writeRecords(channel, positions, liveRecords, channel.size(), target);
+    }
+
+    /**
+     * Writes the records at the given positions to a new file, one per line, and forces
+     * it to disk.
+     */
+    private void writeRecords(FileChannel in, long[] at, int count, long to, Path target) throws IOException {
+        try (Writer out = Files.newBufferedWriter(target, FileManager.ENCODING, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            if (count > 0) {
+                forEachRecord(in, at, count, to, record -> out.write(record + FileManager.NEWLINE));
+            }
+        }
+        try (FileChannel out = FileChannel.open(target, WRITE)) {
+            out.force(false);
+        }
+    }
+
+    /**
+     * Writes a line at the end of the journal.
+     *
+     * @return the file position of the line
+     */
+    private long write(String line) throws IOException {
+        long position = channel.position();
+        ByteBuffer buffer = FileManager.ENCODING.encode(line + FileManager.NEWLINE);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return position;
+    }
+
+    /**
+     * Records an ADD line read from the file as live, or as an anomaly if it is not a
+     * valid record.
+     */
+    private void addPosition(long position, int length, String line) {
+        long id = length == JobId.RECORD_LENGTH ? JobId.parseRecordId(line) : -1;
+        if (id < 0) {
+            deadRecords++;
+            if (anomalies.size() < MAX_ANOMALIES) {
+                anomalies.add(line);
+            }
+            LOGGER.warn("Skipping unreadable line [{}] at {} in journal [{}]", line, position, file);
+            return;
+        }
+        appendPosition(position, id);
+    }
+
+    private void appendPosition(long position, long id) {
+        if (liveRecords == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            ids = Arrays.copyOf(ids, positions.length);
+        }
+        positions[liveRecords] = position;
+        ids[liveRecords++] = id;
+    }
+
+    /**
+     * Drops the ADD records that were followed by a REMOVE of the same record. Only
+     * records with a removed Job ID are read back to be compared.
+     *
+     * @param removed the position of the last REMOVE of each removed record
+     */
+    private void dropRemoved(Map<String, Long> removed) throws IOException {
+        JobIdIndex removedIds = new JobIdIndex(removed.size());
+        for (String record : removed.keySet()) {
+            long id = JobId.parseRecordId(record);
+            if (id >= 0) {
+                removedIds.add(id);
+            }
+        }
+        int live = 0;
+        for (int i = 0; i < liveRecords; i++) {
+            if (removedIds.contains(ids[i])) {
+                Long removedAt = removed.get(record(i));
+                if (removedAt != null && removedAt > positions[i]) {
+                    deadRecords++;
+                    continue;
+                }
+            }
+            positions[live] = positions[i];
+            ids[live++] = ids[i];
+        }
+        liveRecords = live;
+    }
+
+    /**
+     * Splits the file into chunks for parsing in parallel. Each chunk ends just after a
+     * newline, so no line is split between chunks.
+     *
+     * @param from the position to start from, at the start of a line
+     * @param size the size of the file
+     * @return the start and end of each chunk
+     */
+    private List<long[]> splitAtLines(long from, long size) throws IOException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        long chunkSize = Math.max(MIN_CHUNK_BYTES, (size - from + processors - 1) / processors);
+        chunkSize = Math.min(chunkSize, MAX_CHUNK_BYTES);
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4);
+        long start = from;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            // Move the end past the next newline
+            while (end < size) {
+                buffer.clear();
+                int read = channel.read(buffer, end - 1);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i++) {
+                    if (buffer.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+                if (newline >= 0) {
+                    end = end - 1 + newline + 1;
+                    break;
+                }
+                end = Math.min(size, end - 1 + read);
+            }
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Parses one chunk of the file from a memory map.
+     *
+     * @param range the start and end of the chunk
+     * @return the records found in the chunk
+     */
+    private ParsedChunk parse(long[] range) {
+        long start = range[0];
+        int length = (int) (range[1] - range[0]);
+        ParsedChunk chunk = new ParsedChunk(length / RECORD_BYTES + 1);
+        MappedByteBuffer map;
+        try {
+            map = channel.map(MapMode.READ_ONLY, start, length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        try {
+            AsciiView line = new AsciiView(map);
+            int lineStart = 0;
+            for (int i = 0; i <= length; i++) {
+                if (i < length && map.get(i) != '\n') {
+                    continue;
+                }
+                int lineLength = i - lineStart;
+                if (lineLength > 0 && map.get(i - 1) == CR) {
+                    lineLength--;
+                }
+                if (lineLength > 0) {
+                    line.set(lineStart, lineLength);
+                    long position = start + lineStart;
+                    if (map.get(lineStart) == TOMBSTONE) {
+                        // Only the last REMOVE of a record matters
+                        if (chunk.removed.put(line.subSequence(1, lineLength).toString(), position) != null) {
+                            chunk.tombstones++;
+                        }
+                    } else {
+                        long id = JobId.parseRecordId(line);
+                        if (id >= 0) {
+                            chunk.add(position, id);
+                        } else {
+                            String text = line.decode();
+                            chunk.anomalies.add(text);
+                            LOGGER.warn("Skipping unreadable line [{}] at {} in journal [{}]", text, position, file);
+                        }
+                    }
+                }
+                lineStart = i + 1;
+            }
+        } finally {
+            unmap(map);
+        }
+        return chunk;
+    }
+
+    /**
+     * Releases a memory map straight away. Windows will not let a mapped file be
+     * truncated, and a map is otherwise only released when it is garbage collected.
+     */
+    private static void unmap(MappedByteBuffer map) {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), map);
+        } catch (NoSuchMethodException ex) {
+            try {
+                // Java 8
+                Method cleanerMethod = map.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(map);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.debug("Unable to release journal map, {}", e.getMessage());
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("Unable to release journal map, {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads the non-empty lines between two file positions without moving the channel.
+     * A CR at the end of a line is left out.
+     *
+     * @param in the journal channel
+     * @param from the position of the first line
+     * @param to the end of the last line
+     * @param visitor given the position, length in bytes and text of each line
+     */
+    private static void forEachLine(FileChannel in, long from, long to, LineVisitor visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+        byte[] line = new byte[RECORD_BYTES * 2];
+        int length = 0;
+        long lineStart = from;
+        for (long position = from; position < to;) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = in.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    if (length > 0 && line[length - 1] == CR) {
+                        length--;
+                    }
+                    if (length > 0) {
+                        visitor.visit(lineStart, length, new String(line, 0, length, FileManager.ENCODING));
+                    }
+                    length = 0;
+                    lineStart = position + i + 1;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, length * 2);
+                    }
+                    line[length++] = b;
+                }
+            }
+            position += read;
+        }
+        if (length > 0 && line[length - 1] == CR) {
+            length--;
+        }
+        if (length > 0) {
+            visitor.visit(lineStart, length, new String(line, 0, length, FileManager.ENCODING));
+        }
+    }
+
+    /**
+     * Given each live record read from the journal.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(String record) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LineVisitor {
+        void visit(long position, int length, String line) throws IOException;
+    }
+
+    /**
+     * The records found in one chunk of the file.
+     */
+    private static class ParsedChunk {
+        long[] positions;
+        long[] ids;
+        int count;
+        // Last REMOVE of each record in the chunk, and the number of earlier ones
+        final Map<String, Long> removed = new HashMap<>();
+        int tombstones;
+        final List<String> anomalies = new ArrayList<>();
+
+        ParsedChunk(int expected) {
+            positions = new long[expected];
+            ids = new long[expected];
+        }
+
+        void add(long position, long id) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2 + 1);
+                ids = Arrays.copyOf(ids, count * 2 + 1);
+            }
+            positions[count] = position;
+            ids[count++] = id;
+        }
+    }
+
+    /**
+     * A line of the mapped file, read as ASCII characters without being copied.
+     */
+    private static class AsciiView implements CharSequence {
+        private final ByteBuffer buffer;
+        private int offset;
+        private int length;
+
+        AsciiView(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void set(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            AsciiView view = new AsciiView(buffer);
+            view.set(offset + start, end - start);
+            return view;
+        }
+
+        /**
+         * Decodes the bytes of the line as written.
+         */
+        String decode() {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return new String(bytes, FileManager.ENCODING);
+        }
+
+        @Override
+        public String toString() {
+            return decode();
+        }
+    }
+}
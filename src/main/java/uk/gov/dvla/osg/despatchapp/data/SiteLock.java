@@ -0,0 +1,230 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Ensures only one application at a time writes to a site's temp file. An operating
+ * system lock is held on a sidecar lock file for as long as the site is open, and is
+ * released by the operating system if the application dies.
+ * <p>
+ * The lock file also holds an owner record, with the host, user and a heartbeat that
+ * is rewritten every {@value #HEARTBEAT_SECONDS} seconds. A network share can keep the
+ * lock of a PC that crashed for some time, so a lock whose heartbeat has stopped is
+ * taken over by replacing the lock file. Whether the heartbeat has stopped is judged
+ * on this PC's own clock, as the clocks of two PCs may differ: the site is refused the
+ * first time, and taken over when it is opened again once the heartbeat has not
+ * changed for a while. A record that cannot be read is never taken to have stopped.
+ * The lock covers a byte well past the owner record, so other PCs can still read who
+ * holds it on Windows shares.
+ */
+public class SiteLock {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    private static final long HEARTBEAT_SECONDS = 30;
+    // Time a heartbeat must stay the same, on this PC's clock, before the owner is assumed to have gone
+    private static final long STALE_MILLIS = TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS * 5);
+    private static final long LOCK_POSITION = Integer.MAX_VALUE;
+    // Heartbeat last read from each lock held elsewhere, and when it was first read
+    private static final Map<Path, Sighting> SIGHTINGS = new ConcurrentHashMap<>();
+
+    private final Path lockFile;
+    private FileChannel channel;
+    private FileLock lock;
+    private ScheduledExecutorService heartbeat;
+
+    /**
+     * Instantiates the lock for a temp file. The lock file sits beside it with a .lock
+     * extension.
+     *
+     * @param tempFile the temp file
+     */
+    public SiteLock(Path tempFile) {
+        this.lockFile = tempFile.resolveSibling(tempFile.getFileName() + ".lock");
+    }
+
+    /**
+     * Takes the lock, taking over a lock that has not had a heartbeat for a while.
+     *
+     * @throws SiteInUseException if another application holds the lock
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void acquire() throws IOException {
+        if (lock != null) {
+            return;
+        }
+        Files.createDirectories(lockFile.getParent());
+        if (!tryLock()) {
+            Properties owner = readOwner();
+            if (!isStale(owner.getProperty("heartbeat"))) {
+                throw new SiteInUseException("Site is in use by " + owner.getProperty("user") + " on " + owner.getProperty("host"));
+            }
+            LOGGER.warn("Taking over lock from {} on {}, heartbeat has not changed for {} seconds", owner.getProperty("user"),
+                    owner.getProperty("host"), TimeUnit.MILLISECONDS.toSeconds(STALE_MILLIS));
+            try {
+                Files.deleteIfExists(lockFile);
+            } catch (IOException ex) {
+                LOGGER.error("Unable to remove stale lock file {}, {}", lockFile, ex.getMessage());
+                throw new SiteInUseException("Site is held by a stale lock that cannot be removed, " + lockFile);
+            }
+            if (!tryLock()) {
+                throw new SiteInUseException("Site was taken over by another application");
+            }
+        } else if (channel.size() > 0) {
+            Properties owner = readOwner();
+            LOGGER.warn("Previous session by {} on {} did not close cleanly", owner.getProperty("user"), owner.getProperty("host"));
+        }
+        SIGHTINGS.remove(lockFile);
+        writeOwner();
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "site-lock-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(this::beat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Clears the owner record and releases the lock.
+     */
+    public synchronized void release() {
+        if (lock == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        try {
+            // An empty lock file shows the site was closed cleanly
+            channel.truncate(0);
+            lock.release();
+        } catch (IOException ex) {
+            LOGGER.error("Unable to release lock {}, {}", lockFile, ex.getMessage());
+        }
+        closeChannel();
+        lock = null;
+    }
+
+    private boolean tryLock() throws IOException {
+        channel = FileChannel.open(lockFile, CREATE, READ, WRITE);
+        try {
+            lock = channel.tryLock(LOCK_POSITION, 1, false);
+        } catch (OverlappingFileLockException ex) {
+            // Already held in this JVM
+            lock = null;
+        }
+        if (lock == null) {
+            closeChannel();
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void beat() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            writeOwner();
+        } catch (IOException ex) {
+            LOGGER.error("Unable to update lock heartbeat {}, {}", lockFile, ex.getMessage());
+        }
+    }
+
+    private void writeOwner() throws IOException {
+        Properties owner = new Properties();
+        owner.setProperty("host", hostName());
+        owner.setProperty("user", System.getProperty("user.name", ""));
+        owner.setProperty("process", ManagementFactory.getRuntimeMXBean().getName());
+        owner.setProperty("heartbeat", Long.toString(System.currentTimeMillis()));
+        StringWriter writer = new StringWriter();
+        owner.store(writer, null);
+        ByteBuffer buffer = ByteBuffer.wrap(writer.toString().getBytes(FileManager.ENCODING));
+        // Written over the old record and then cut to length, so it is never seen empty
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.truncate(buffer.limit());
+        channel.force(false);
+    }
+
+    /**
+     * Checks whether the heartbeat of a lock held elsewhere has stopped. It has only
+     * stopped if it was read with the same value more than STALE_MILLIS ago, timed on
+     * this PC.
+     *
+     * @param beat the heartbeat read from the owner record, null if it could not be read
+     * @return true, if the owner is assumed to have gone
+     */
+    private boolean isStale(String beat) {
+        if (beat == null) {
+            SIGHTINGS.remove(lockFile);
+            return false;
+        }
+        long now = System.nanoTime();
+        Sighting seen = SIGHTINGS.compute(lockFile, (file, last) -> last != null && last.heartbeat.equals(beat) ? last : new Sighting(beat, now));
+        return now - seen.since > TimeUnit.MILLISECONDS.toNanos(STALE_MILLIS);
+    }
+
+    private Properties readOwner() {
+        Properties owner = new Properties();
+        try {
+            owner.load(new StringReader(new String(Files.readAllBytes(lockFile), FileManager.ENCODING)));
+        } catch (IOException | IllegalArgumentException ex) {
+            LOGGER.warn("Unable to read lock owner {}, {}", lockFile, ex.getMessage());
+        }
+        return owner;
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to close lock file {}, {}", lockFile, ex.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * A heartbeat read from a lock held elsewhere.
+     */
+    private static final class Sighting {
+
+        private final String heartbeat;
+        // When the heartbeat was first read with this value, from System.nanoTime()
+        private final long since;
+
+        Sighting(String heartbeat, long since) {
+            this.heartbeat = heartbeat;
+            this.since = since;
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException ex) {
+            return "unknown";
+        }
+    }
+}
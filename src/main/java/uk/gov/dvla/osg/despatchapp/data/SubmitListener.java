@@ -0,0 +1,28 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
+import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
+
+/**
+ * Follows a batch as it is submitted. Errors are shown to the operator by default, a
+ * submission retried in the background can log them instead.
+ */
+@FunctionalInterface
+public interface SubmitListener {
+
+    /**
+     * Called as each stage starts.
+     *
+     * @param stage the stage
+     * @return false, to stop the submission while the stage can still be cancelled
+     */
+    boolean enterStage(SubmitStage stage);
+
+    default void showError(String code, String message, String action) {
+        ErrMsgDialog.show(code, message, action);
+    }
+
+    default void showError(String code, String message) {
+        ErrMsgDialog.show(code, message);
+    }
+}
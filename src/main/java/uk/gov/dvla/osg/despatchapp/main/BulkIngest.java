@@ -0,0 +1,212 @@
+package uk.gov.dvla.osg.despatchapp.main;
+
+import java.io.Console;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.MessageFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.config.AppConfig;
+import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.config.SiteConfigFactory;
+import uk.gov.dvla.osg.despatchapp.controllers.SubmitFileController;
+import uk.gov.dvla.osg.despatchapp.data.Batch;
+import uk.gov.dvla.osg.despatchapp.data.BulkLoader;
+import uk.gov.dvla.osg.despatchapp.data.FileManager;
+import uk.gov.dvla.osg.despatchapp.data.SiteInUseException;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
+import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
+import uk.gov.dvla.osg.rpd.web.client.LoginClient;
+import uk.gov.dvla.osg.rpd.web.config.NetworkConfig;
+import uk.gov.dvla.osg.rpd.web.config.Session;
+
+/**
+ * Loads a file of Job IDs into a site's temp file without the GUI, for when a scanner
+ * bench is down and the Job IDs have to come from a supplier file instead. The site is
+ * locked in the same way as when it is chosen in the GUI, so the GUI cannot have the
+ * site open at the same time. The items can then be submitted from the GUI, or straight
+ * away by adding --submit, which asks for the RPD login on the console.
+ * <p>
+ * Usage: java -cp DespatchApp.jar uk.gov.dvla.osg.despatchapp.main.BulkIngest
+ * {networkConfig} {appConfig} {site} {inputFile} [--submit]
+ */
+public class BulkIngest {
+
+    private static final Logger LOG = LogManager.getLogger();
+
+    private static final String SUBMIT = "--submit";
+    private static final String USAGE = "Usage: BulkIngest {networkConfig} {appConfig} {site} {inputFile} [" + SUBMIT + "]";
+    private static final long REPORT_WAIT_MINUTES = 5;
+    private static final int OK = 0;
+    private static final int FAILED = 1;
+    private static final int BAD_ARGUMENTS = 2;
+
+    private BulkIngest() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Loads the file and, if asked, submits the site's items.
+     *
+     * @param args the arguments
+     * @return the exit code
+     */
+    static int run(String[] args) {
+        ErrMsgDialog.setHeadless(true);
+        boolean submit = args.length == 5 && SUBMIT.equals(args[4]);
+        if (args.length != 4 && !submit) {
+            return fail(BAD_ARGUMENTS, "Incorrect number of arguments supplied!", USAGE);
+        }
+        for (int i = 0; i < 2; i++) {
+            if (!new File(args[i]).exists()) {
+                return fail(BAD_ARGUMENTS, MessageFormat.format("Properties File ''{0}'' doesn''t exist", args[i]), USAGE);
+            }
+        }
+        PrintSite site = EnumUtils.getEnumIgnoreCase(PrintSite.class, args[2]);
+        if (site == null) {
+            return fail(BAD_ARGUMENTS, MessageFormat.format("Site ''{0}'' is not known", args[2]), USAGE);
+        }
+        File input = new File(args[3]);
+        if (!input.isFile()) {
+            return fail(BAD_ARGUMENTS, MessageFormat.format("Input file ''{0}'' doesn''t exist", args[3]), USAGE);
+        }
+
+        SiteConfig config;
+        try {
+            NetworkConfig.init(args[0]);
+            AppConfig.init(args[1]);
+            config = SiteConfigFactory.get(site);
+        } catch (RuntimeException ex) {
+            return fail(BAD_ARGUMENTS, ex.getMessage(), "Check the configuration files.");
+        }
+        if (config == null) {
+            return fail(BAD_ARGUMENTS, "There is no configuration for " + site, "Check Application Configuration file.");
+        }
+
+        FileManager fileManager = new FileManager(config);
+        try {
+            return ingest(site, config, fileManager, input, submit);
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private static int ingest(PrintSite site, SiteConfig config, FileManager fileManager, File input, boolean submit) {
+        long started = System.nanoTime();
+        JobIdIndex index = new JobIdIndex();
+        long inTempFile;
+        try {
+            long[] ids = fileManager.read();
+            inTempFile = ids.length;
+            index.addAll(ids);
+            for (Batch batch : fileManager.getPendingBatches()) {
+                index.addAll(batch.getNumericIds());
+                LOG.warn("Batch {} is waiting in the outbox, open the site in the GUI to send it", batch.getTimeStamp());
+            }
+        } catch (SiteInUseException ex) {
+            LOG.error(ex.getMessage());
+            return fail(FAILED, "Application is already in use at this site - " + site, "Please close the open application before continuing.");
+        } catch (IOException ex) {
+            return fail(FAILED, "Unable to read the temp file, " + ex.getMessage(), "Check you have read,write access to " + fileManager.getTempFileDirectory());
+        }
+
+        BulkLoader loader = new BulkLoader(fileManager, index);
+        try {
+            loader.load(Paths.get(input.getPath()));
+        } catch (IOException ex) {
+            return fail(FAILED, "Unable to load " + input + ", " + ex.getMessage(), "Job IDs loaded before the error are in the temp file.");
+        }
+        LOG.info("Loaded {} lines from {} into {} in {} ms: {} added, {} duplicates, {} invalid", loader.getLines(), input, site,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), loader.getAdded(), loader.getDuplicates(), loader.getInvalid());
+
+        if (submit && inTempFile + loader.getAdded() == 0) {
+            LOG.info("No items to send.");
+            return OK;
+        }
+        return submit ? submit(config, fileManager) : OK;
+    }
+
+    /**
+     * Submits everything in the temp file through the same path as the GUI, and waits
+     * for the report to be written.
+     */
+    private static int submit(SiteConfig config, FileManager fileManager) {
+        SubmitFileController submitFileController = new SubmitFileController(config, fileManager);
+        if (!login() || !submitFileController.canSubmit()) {
+            return fail(FAILED, "Unable to log in to RPD", "The Job IDs are in the temp file, submit them from the GUI.");
+        }
+        Batch batch;
+        try {
+            batch = fileManager.freeze();
+        } catch (IOException ex) {
+            return fail(FAILED, "Unable to save the batch for submission, " + ex.getMessage(), "The Job IDs are in the temp file, submit them from the GUI.");
+        }
+        boolean sent = submitFileController.trySubmit(batch, stage -> {
+            LOG.info("Batch {} - {}", batch.getTimeStamp(), stage);
+            return true;
+        });
+        submitFileController.getReportWorker().shutdown();
+        if (!sent) {
+            return fail(FAILED, "Unable to send batch " + batch.getTimeStamp() + " to RPD", "The batch is in the outbox, and will be sent when the site is opened in the GUI.");
+        }
+        try {
+            submitFileController.getReportWorker().awaitTermination(REPORT_WAIT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Batch {} sent to RPD", batch.getTimeStamp());
+        return OK;
+    }
+
+    /**
+     * Asks for the RPD login on the console.
+     *
+     * @return true, if the user logged in
+     */
+    private static boolean login() {
+        Console console = System.console();
+        if (console == null) {
+            LOG.error("{} needs a console to log in to RPD", SUBMIT);
+            return false;
+        }
+        String user = console.readLine("RPD user name: ");
+        char[] password = console.readPassword("RPD password: ");
+        if (user == null || password == null) {
+            return false;
+        }
+        Session session = Session.getInstance();
+        session.setUserName(user.trim());
+        session.setPassword(new String(password).trim());
+        LoginClient login = LoginClient.getInstance();
+        Optional<String> token = login.getSessionToken(session.getUserName(), session.getPassword());
+        if (!token.isPresent()) {
+            ErrMsgDialog.show(login.getErrorResponse().getCode(), login.getErrorResponse().getMessage(), login.getErrorResponse().getAction());
+            return false;
+        }
+        session.setToken(token.get());
+        return true;
+    }
+
+    private static int fail(int code, String msg, String action) {
+        LOG.error(msg);
+        System.err.println(msg);
+        System.err.println(action);
+        return code;
+    }
+}
@@ -0,0 +1,20 @@
+package uk.gov.dvla.osg.despatchapp.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value read when it is asked for, such as the length of a queue.
+ */
+public class Gauge implements GaugeMXBean {
+
+    private final LongSupplier value;
+
+    Gauge(LongSupplier value) {
+        this.value = value;
+    }
+
+    @Override
+    public long getValue() {
+        return value.getAsLong();
+    }
+}
@@ -0,0 +1,9 @@
+package uk.gov.dvla.osg.despatchapp.metrics;
+
+/**
+ * The JMX view of a {@link Gauge}.
+ */
+public interface GaugeMXBean {
+
+    long getValue();
+}
@@ -0,0 +1,151 @@
+package uk.gov.dvla.osg.despatchapp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded values, such as timings or batch sizes, into fixed buckets so that it
+ * can be updated from any thread without locking and without holding the values. Values
+ * below 16 have a bucket each. Above that, each power of two is split into eight
+ * buckets, so a percentile is never more than an eighth out.
+ */
+public class Histogram implements HistogramMXBean {
+
+    private static final int EXACT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_BITS = Integer.numberOfTrailingZeros(EXACT);
+    private static final int BUCKETS = EXACT + (Long.SIZE - 1 - EXACT_BITS) * SUB_BUCKETS;
+
+    private final String unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(v));
+        count.increment();
+        sum.add(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * Records the time in microseconds since the given start.
+     *
+     * @param startNanos the start, from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    @Override
+    public long get50thPercentile() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public long get95thPercentile() {
+        return percentile(0.95);
+    }
+
+    @Override
+    public long get99thPercentile() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Gets the value that the given fraction of recorded values are at or below. Values
+     * recorded while this runs may or may not be included.
+     *
+     * @param fraction the fraction, between 0 and 1
+     * @return the highest value in the bucket the percentile falls in, at most the maximum
+     */
+    public long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p95=%d p99=%d max=%d %s", getCount(), getMean(),
+                get50thPercentile(), get95thPercentile(), get99thPercentile(), getMax(), unit);
+    }
+
+    static int bucketOf(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - EXACT_BITS) * SUB_BUCKETS + sub;
+    }
+
+    static long highestIn(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + EXACT_BITS;
+        int sub = (bucket - EXACT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (1L << exponent) + sub * width;
+        return lowest + width - 1;
+    }
+}
@@ -0,0 +1,27 @@
+package uk.gov.dvla.osg.despatchapp.metrics;
+
+/**
+ * The JMX view of a {@link Histogram}. Percentiles are accurate to within an eighth of
+ * the value.
+ */
+public interface HistogramMXBean {
+
+    String getUnit();
+
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long get50thPercentile();
+
+    long get95thPercentile();
+
+    long get99thPercentile();
+
+    /**
+     * Clears the recorded values.
+     */
+    void reset();
+}
@@ -0,0 +1,117 @@
+package uk.gov.dvla.osg.despatchapp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds the application's metrics, so that a slow bench can be traced to the network
+ * share, RPD or the GUI. Each metric is registered as an MBean under
+ * {@value #DOMAIN}, to be watched in JConsole or VisualVM, and the metrics that have
+ * recorded anything are written to the log every {@value #DUMP_MINUTES} minutes.
+ * <p>
+ * Timers record microseconds. Metrics are looked up once, when the class that records
+ * them is loaded, so recording a value costs no more than a few atomic updates.
+ */
+public class Metrics {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    static final String DOMAIN = "uk.gov.dvla.osg.despatchapp";
+    private static final long DUMP_MINUTES = 5;
+
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    private static final ScheduledExecutorService DUMPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-dump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        DUMPER.scheduleWithFixedDelay(Metrics::dump, DUMP_MINUTES, DUMP_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private Metrics() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets a timer, creating it the first time it is asked for.
+     *
+     * @param name the name of the timer, e.g. journal.append
+     * @return the timer, recording microseconds
+     */
+    public static Histogram timer(String name) {
+        return histogram(name, "us");
+    }
+
+    /**
+     * Gets a histogram, creating it the first time it is asked for.
+     *
+     * @param name the name of the histogram, e.g. batch.size
+     * @param unit the unit of the values recorded
+     * @return the histogram
+     */
+    public static Histogram histogram(String name, String unit) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> {
+            Histogram histogram = new Histogram(unit);
+            register("Histogram", key, histogram);
+            return histogram;
+        });
+    }
+
+    /**
+     * Adds a gauge, replacing any gauge of the same name.
+     *
+     * @param name the name of the gauge, e.g. outbox.pending.DVLA
+     * @param value reads the value, from any thread
+     */
+    public static void gauge(String name, LongSupplier value) {
+        Gauge gauge = new Gauge(value);
+        GAUGES.put(name, gauge);
+        register("Gauge", name, gauge);
+    }
+
+    /**
+     * Writes every histogram that has recorded a value, and every gauge, to the log.
+     */
+    static void dump() {
+        try {
+            HISTOGRAMS.forEach((name, histogram) -> {
+                if (histogram.getCount() > 0) {
+                    LOGGER.info("{} {}", name, histogram);
+                }
+            });
+            GAUGES.forEach((name, gauge) -> LOGGER.info("{} value={}", name, gauge.getValue()));
+        } catch (RuntimeException ex) {
+            // An exception would stop the schedule
+            LOGGER.error("Unable to write metrics, {}", ex.getMessage());
+        }
+    }
+
+    private static void register(String type, String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException ex) {
+            // The metric is still recorded and logged
+            LOGGER.warn("Unable to register metric {} with JMX, {}", name, ex.getMessage());
+        }
+    }
+}
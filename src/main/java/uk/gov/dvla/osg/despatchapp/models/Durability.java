@@ -0,0 +1,21 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+/**
+ * How far a scan is saved before it is shown as scanned.
+ */
+public enum Durability {
+    /**
+     * Each scan is forced to disk before it is shown.
+     */
+    FSYNC,
+    /**
+     * Scans are forced to disk together, after a short wait or once enough of them have
+     * built up, and are shown once their group is on disk.
+     */
+    GROUP_COMMIT,
+    /**
+     * Scans are shown as soon as they are written, and reach the disk when the
+     * operating system flushes its cache.
+     */
+    OS_BUFFERED
+}
@@ -1,90 +1,228 @@
 package uk.gov.dvla.osg.despatchapp.models;
 
 import java.text.MessageFormat;
-import java.util.Arrays;
-import java.util.List;
-
-import org.apache.commons.lang3.StringUtils;
-
-import uk.gov.dvla.osg.despatchapp.utilities.DateUtils;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 public class JobId {
-    
+
     private static final int JID_LENGTH = 10;
-    
+    // Length of a record - Job ID, tab and a DD/MM/YY HH:MM:SS timestamp
+    public static final int RECORD_LENGTH = JID_LENGTH + 1 + 17;
+    private static final long MAX_JID = 9_999_999_999L;
+    // Returned by scanTime for a record that is not valid
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
     // Ten Digit RPD Job ID
-    private String jId;
-    // Time that the barcode was scanned, format is DD/MM/YY HH:MM:SS
-    private String timeStamp;
+    private final long id;
+    // Time that the barcode was scanned, in seconds since the epoch
+    private final long scanTime;
 
     /**
      * New instance.
      * @param jId the job id
-     * @param timeStamp the time stamp
      * @return the JobId
      */
     public static JobId newInstance(String jId) {
-        if (!isValid(jId)) {
+        long id = parseDigits(jId, 0, jId.length());
+        if (id < 0 || jId.length() != JID_LENGTH) {
             throw new IllegalArgumentException(MessageFormat.format("Job ID is not valid - [{0}]", jId));
         }
-        String timeStamp = DateUtils.timeStamp("dd/MM/yy HH:mm:ss");
-        return new JobId(jId, timeStamp);
+        return new JobId(id, System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * New instance from a numeric Job ID, as accumulated by the barcode reader.
+     * @param id the numeric job id
+     * @return the JobId
+     */
+    public static JobId newInstance(long id) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException(MessageFormat.format("Job ID is not valid - [{0}]", Long.toString(id)));
+        }
+        return new JobId(id, System.currentTimeMillis() / 1000);
     }
 
     /**
-     * New instance of a JobId parsed from an input string.
+     * New instance of a JobId parsed from an input string. The input is in the format
+     * written by {@link #toString()}.
      * @param input the input
      * @return the job id
      */
     public static JobId fromString(String input) {
-        List<String> array = Arrays.asList(input.split("\t"));
-        String jid = array.get(0);
-        String time = array.get(1);
-        return new JobId(jid, time);
+        long scanTime = scanTime(input);
+        if (scanTime == INVALID) {
+            throw new IllegalArgumentException(MessageFormat.format("Record is not valid - [{0}]", input));
+        }
+        return new JobId(parseDigits(input, 0, JID_LENGTH), scanTime);
+    }
+
+    /**
+     * Reads the numeric Job ID from a record in the format written by {@link #toString()},
+     * checking that the whole record is valid, without creating a JobId. Used when a
+     * whole temp file is read at once.
+     * @param record the record
+     * @return the numeric job id, or -1 if the record is not valid
+     */
+    public static long parseRecordId(CharSequence record) {
+        return scanTime(record) == INVALID ? -1 : parseDigits(record, 0, JID_LENGTH);
     }
-    
+
+    /**
+     * Checks a record and reads its scan time.
+     * @param input the record
+     * @return the scan time in epoch seconds, or INVALID if the record is not valid
+     */
+    private static long scanTime(CharSequence input) {
+        if (input.length() != RECORD_LENGTH || input.charAt(JID_LENGTH) != '\t') {
+            return INVALID;
+        }
+        long id = parseDigits(input, 0, JID_LENGTH);
+        // DD/MM/YY HH:MM:SS
+        int t = JID_LENGTH + 1;
+        int day = (int) parseDigits(input, t, t + 2);
+        int month = (int) parseDigits(input, t + 3, t + 5);
+        int year = (int) parseDigits(input, t + 6, t + 8);
+        int hour = (int) parseDigits(input, t + 9, t + 11);
+        int minute = (int) parseDigits(input, t + 12, t + 14);
+        int second = (int) parseDigits(input, t + 15, t + 17);
+        if (id < 0 || day < 0 || month < 0 || year < 0 || hour < 0 || minute < 0 || second < 0) {
+            return INVALID;
+        }
+        try {
+            LocalDateTime time = LocalDateTime.of(2000 + year, month, day, hour, minute, second);
+            return time.atZone(ZONE).toEpochSecond();
+        } catch (DateTimeException ex) {
+            return INVALID;
+        }
+    }
+
     /**
      * Instantiates a new job id.
-     * @param jId the job id
-     * @param timeStamp the time stamp
+     * @param id the numeric job id
+     * @param scanTime the scan time in epoch seconds
      */
-    private JobId(String jId, String timeStamp) {
-        this.jId = jId;
-        this.timeStamp = timeStamp;
+    private JobId(long id, long scanTime) {
+        this.id = id;
+        this.scanTime = scanTime;
     }
 
+    /**
+     * Gets the ten-digit Job ID, rendered on each call.
+     * @return the job id
+     */
     public String getJobId() {
-        return jId;
+        return appendJobId(new StringBuilder(JID_LENGTH)).toString();
+    }
+
+    /**
+     * Gets the Job ID as a number, used as the key in the {@link JobIdIndex}.
+     * @return the numeric job id
+     */
+    public long getNumericId() {
+        return id;
     }
-    
+
+    /**
+     * Gets the time that the barcode was scanned.
+     * @return the scan time in seconds since the epoch
+     */
+    public long getScanTime() {
+        return scanTime;
+    }
+
+    /**
+     * Gets the scan time in the format DD/MM/YY HH:MM:SS, rendered on each call.
+     * @return the time stamp
+     */
+    public String getTimeStamp() {
+        return appendTimeStamp(new StringBuilder(RECORD_LENGTH - JID_LENGTH - 1)).toString();
+    }
+
     /**
      * Validates if the entered barcode is a valid ten-digit RPD job id.
-     * 
+     *
      * @param barcode the barcode to validate
      * @return true, if barcode is a valid ten-digit Job ID
      */
     public static boolean isValid(String barcode) {
-        return StringUtils.isNumeric(barcode) && barcode.length() == JID_LENGTH;
+        return barcode != null && barcode.length() == JID_LENGTH && parseDigits(barcode, 0, JID_LENGTH) >= 0;
+    }
+
+    /**
+     * Validates if the numeric barcode fits in a ten-digit RPD job id.
+     *
+     * @param id the numeric barcode to validate
+     * @return true, if the value is a valid ten-digit Job ID
+     */
+    public static boolean isValid(long id) {
+        return id >= 0 && id <= MAX_JID;
     }
-    
-    /* 
+
+    /**
+     * Parses a run of ASCII digits.
+     * @param str the string holding the digits
+     * @param from index of the first digit
+     * @param to index after the last digit
+     * @return the value, or -1 if any character is not a digit
+     */
+    private static long parseDigits(CharSequence str, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private StringBuilder appendJobId(StringBuilder sb) {
+        for (long div = 1_000_000_000L; div > 0; div /= 10) {
+            sb.append((char) ('0' + (id / div) % 10));
+        }
+        return sb;
+    }
+
+    private StringBuilder appendTimeStamp(StringBuilder sb) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(scanTime), ZONE);
+        appendTwoDigits(sb, time.getDayOfMonth()).append('/');
+        appendTwoDigits(sb, time.getMonthValue()).append('/');
+        appendTwoDigits(sb, time.getYear() % 100).append(' ');
+        appendTwoDigits(sb, time.getHour()).append(':');
+        appendTwoDigits(sb, time.getMinute()).append(':');
+        return appendTwoDigits(sb, time.getSecond());
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /*
+     * Renders the record written to the temp file and displayed in the ListView.
      * (non-Javadoc)
      * @see java.lang.Object#toString()
      */
     @Override
     public String toString() {
-        return String.join("\t", jId, timeStamp);
+        StringBuilder sb = new StringBuilder(RECORD_LENGTH);
+        appendJobId(sb).append('\t');
+        return appendTimeStamp(sb).toString();
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((jId == null) ? 0 : jId.hashCode());
-        return result;
+        return Long.hashCode(id);
     }
 
-    /* 
+    /*
      * Objects are equal if they have the same Job ID, ignoring the timestamp.
      * Used to avoid duplicate ID's being created.
      * (non-Javadoc)
@@ -102,14 +240,7 @@ public class JobId {
             return false;
         }
         JobId other = (JobId) obj;
-        if (jId == null) {
-            if (other.jId != null) {
-                return false;
-            }
-        } else if (!jId.equals(other.jId)) {
-            return false;
-        }
-        return true;
+        return id == other.id;
     }
 
 }
@@ -0,0 +1,179 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+import java.util.Arrays;
+
+/**
+ * Set of numeric Job IDs used to reject duplicate scans. Keys are stored unboxed in a
+ * single open-addressing table with linear probing, so lookups are constant-time and do
+ * not allocate. Removal shifts later entries back rather than leaving tombstones, which
+ * keeps probe chains short however many items are removed.
+ */
+public class JobIdIndex {
+
+    // Job IDs are never negative, so -1 can mark an empty slot
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 1024;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+
+    /**
+     * Instantiates a new empty index.
+     */
+    public JobIdIndex() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Instantiates a new index sized to hold the expected number of Job IDs without
+     * resizing.
+     *
+     * @param expectedSize the expected number of Job IDs
+     */
+    public JobIdIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Checks if the Job ID is in the index.
+     *
+     * @param id the numeric Job ID
+     * @return true, if the Job ID has already been added
+     */
+    public boolean contains(long id) {
+        for (int i = slot(id); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the Job ID to the index.
+     *
+     * @param id the numeric Job ID
+     * @return true, if the Job ID was not already in the index
+     */
+    public boolean add(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Job ID cannot be negative - [" + id + "]");
+        }
+        int i = slot(id);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == id) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        // Keep the table at most half full
+        if (++size > keys.length / 2) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Adds many Job IDs at once. The table is grown once beforehand, rather than being
+     * rehashed repeatedly as it fills.
+     *
+     * @param ids the numeric Job IDs
+     * @return the number of Job IDs that were not already in the index
+     */
+    public int addAll(long[] ids) {
+        int capacity = capacityFor(size + ids.length);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+        int added = 0;
+        for (long id : ids) {
+            if (add(id)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes the Job ID from the index.
+     *
+     * @param id the numeric Job ID
+     * @return true, if the Job ID was in the index
+     */
+    public boolean remove(long id) {
+        // No Job ID is negative, and -1 would match the first empty slot
+        if (id < 0) {
+            return false;
+        }
+        int gap = slot(id);
+        while (keys[gap] != id) {
+            if (keys[gap] == EMPTY) {
+                return false;
+            }
+            gap = (gap + 1) & mask;
+        }
+        // Shift back any later entry in the probe chain that could have used the gap
+        for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+            int home = slot(keys[i]);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes every Job ID from the index.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Gets the number of Job IDs in the index.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long id : old) {
+            if (id != EMPTY) {
+                int i = slot(id);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = id;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,26 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+/**
+ * The files a despatch report can be written as.
+ */
+public enum ReportFormat {
+    PDF("pdf"),
+    CSV("csv"),
+    // JSON Lines, one JSON object per Job ID
+    JSONL("jsonl");
+
+    private final String extension;
+
+    ReportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension for the format.
+     *
+     * @return the extension, without the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
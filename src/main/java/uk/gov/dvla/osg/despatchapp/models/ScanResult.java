@@ -0,0 +1,22 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+/**
+ * What happened to a scanned barcode.
+ */
+public enum ScanResult {
+    ADDED,
+    // Added, but the Job ID was sent to RPD in an earlier batch
+    ALREADY_DESPATCHED,
+    NOT_A_JOB_ID,
+    DUPLICATE,
+    WRITE_FAILED;
+
+    /**
+     * Checks whether the scan was added to the list.
+     *
+     * @return true, if the scan was added
+     */
+    public boolean isAdded() {
+        return this == ADDED || this == ALREADY_DESPATCHED;
+    }
+}
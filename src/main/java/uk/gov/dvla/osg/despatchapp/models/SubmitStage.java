@@ -0,0 +1,32 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+/**
+ * Stages of a batch submission, in the order they run.
+ */
+public enum SubmitStage {
+    WRITING_DAT("Writing DAT file..."),
+    SENDING_DAT("Sending DAT file..."),
+    SENDING_EOT("Sending EOT file..."),
+    REPORTING("Writing report...");
+
+    private final String description;
+
+    SubmitStage(String description) {
+        this.description = description;
+    }
+
+    /**
+     * A submission can only be cancelled until the DAT file has been sent. After that
+     * the EOT must follow, otherwise RPD is left with a DAT file it cannot process.
+     *
+     * @return true, if the submission can still be cancelled at this stage
+     */
+    public boolean isCancellable() {
+        return this.compareTo(SENDING_DAT) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,37 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.nio.file.Path;
+
+/**
+ * Writes the manifest as CSV, with a header line and a row for each Job ID. Job IDs
+ * keep their leading zeros, and text fields are quoted where needed.
+ */
+class CsvManifestSink extends TextManifestSink {
+
+    private static final String HEADER = "job_id,scan_time,operator,site";
+
+    // The same for every row, so quoted once
+    private final String operatorAndSite;
+
+    CsvManifestSink(Path file, String operator, String site) {
+        super(file);
+        this.operatorAndSite = "," + quote(operator) + "," + quote(site);
+    }
+
+    @Override
+    String header() {
+        return HEADER;
+    }
+
+    @Override
+    void appendRow(StringBuilder line, long id, long scanTime) {
+        ManifestWriter.appendJobId(id, line).append(',').append(ManifestWriter.formatScanTime(scanTime)).append(operatorAndSite);
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
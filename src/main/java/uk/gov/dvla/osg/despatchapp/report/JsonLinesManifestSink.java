@@ -0,0 +1,45 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.nio.file.Path;
+
+/**
+ * Writes the manifest as JSON Lines, one object for each Job ID, e.g.
+ * {"jobId":"0123456789","scanTime":"2020-12-31T09:15:00","operator":"user","site":"MORRISTON"}.
+ * The Job ID is a string, so it keeps its leading zeros.
+ */
+class JsonLinesManifestSink extends TextManifestSink {
+
+    // The same for every row, so escaped once
+    private final String operatorAndSite;
+
+    JsonLinesManifestSink(Path file, String operator, String site) {
+        super(file);
+        this.operatorAndSite = "\",\"operator\":" + quote(operator) + ",\"site\":" + quote(site) + "}";
+    }
+
+    @Override
+    String header() {
+        return null;
+    }
+
+    @Override
+    void appendRow(StringBuilder line, long id, long scanTime) {
+        line.append("{\"jobId\":\"");
+        ManifestWriter.appendJobId(id, line).append("\",\"scanTime\":\"").append(ManifestWriter.formatScanTime(scanTime)).append(operatorAndSite);
+    }
+
+    private static String quote(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,40 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.IOException;
+
+/**
+ * One output of a {@link ManifestWriter}. Every method is called on the output's own
+ * thread, in order: begin, write for each block of rows, then end, or abort if the
+ * output or the batch could not be read.
+ */
+interface ManifestSink {
+
+    /**
+     * Creates the output file.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void begin() throws IOException;
+
+    /**
+     * Writes a block of rows. The block is shared with the other outputs and must not
+     * be changed.
+     *
+     * @param rows the rows
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void write(ManifestWriter.Rows rows) throws IOException;
+
+    /**
+     * Finishes and closes the output file.
+     *
+     * @param summary the summary of the whole batch
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void end(ManifestWriter.Summary summary) throws IOException;
+
+    /**
+     * Closes and deletes a partly written output file.
+     */
+    void abort();
+}
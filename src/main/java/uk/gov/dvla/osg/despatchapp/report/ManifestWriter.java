@@ -0,0 +1,328 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.ReportFormat;
+
+/**
+ * Writes the manifest of a submitted batch in every configured format at once. The
+ * batch records are read once, and each row, of Job ID, scan time, operator and site,
+ * is handed to every output. Each output is written on its own thread, fed through a
+ * small bounded queue of blocks of rows. The blocks are shared by the outputs rather
+ * than copied, and reading waits while any output is a full queue behind, so memory
+ * use stays flat however large the batch is and however many formats are written.
+ */
+public class ManifestWriter {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    // Rows handed to the outputs at a time
+    private static final int BLOCK_ROWS = 1024;
+    // Blocks waiting for each output, beyond this reading waits
+    private static final int QUEUED_BLOCKS = 4;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    // One thread per output, shared by every manifest
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "manifest-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String operator;
+    private final String site;
+    private final List<ReportFormat> formats = new ArrayList<>();
+    private final List<ManifestSink> sinks = new ArrayList<>();
+
+    /**
+     * Instantiates a new manifest writer.
+     *
+     * @param operator the user who submitted the batch
+     * @param site the site the batch was scanned at
+     */
+    public ManifestWriter(String operator, String site) {
+        this.operator = operator;
+        this.site = site;
+    }
+
+    /**
+     * Adds an output.
+     *
+     * @param format the format to write
+     * @param file the file to write it to
+     * @return this writer
+     */
+    public ManifestWriter add(ReportFormat format, Path file) {
+        switch (format) {
+        case PDF:
+            sinks.add(new PdfManifestSink(file, operator));
+            break;
+        case CSV:
+            sinks.add(new CsvManifestSink(file, operator, site));
+            break;
+        default:
+            sinks.add(new JsonLinesManifestSink(file, operator, site));
+        }
+        formats.add(format);
+        return this;
+    }
+
+    /**
+     * Checks whether any outputs have been added.
+     *
+     * @return true, if there is nothing to write
+     */
+    public boolean isEmpty() {
+        return sinks.isEmpty();
+    }
+
+    /**
+     * Reads the batch records and writes every output. If any output fails, the others
+     * are still finished, and the partial file of the one that failed is deleted.
+     *
+     * @param records the file holding the submitted records, as written by JobId.toString()
+     * @return the summary of the batch
+     * @throws IOException if the records could not be read, or an output could not be written
+     */
+    public Summary write(Path records) throws IOException {
+        List<BlockingQueue<Rows>> queues = new ArrayList<>(sinks.size());
+        List<Future<?>> outputs = new ArrayList<>(sinks.size());
+        for (int i = 0; i < sinks.size(); i++) {
+            BlockingQueue<Rows> queue = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+            ManifestSink sink = sinks.get(i);
+            Histogram writeTime = Metrics.timer("report.write." + formats.get(i).name().toLowerCase());
+            queues.add(queue);
+            outputs.add(WRITERS.submit(() -> {
+                drain(sink, queue, writeTime);
+                return null;
+            }));
+        }
+
+        Summary summary = new Summary();
+        Rows rows = new Rows();
+        IOException failure = null;
+        try (BufferedReader reader = Files.newBufferedReader(records, StandardCharsets.UTF_8)) {
+            for (String record = reader.readLine(); record != null; record = reader.readLine()) {
+                if (record.isEmpty()) {
+                    continue;
+                }
+                JobId jobId;
+                try {
+                    jobId = JobId.fromString(record);
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.warn("Leaving unreadable record [{}] out of the manifest", record);
+                    continue;
+                }
+                rows.ids[rows.size] = jobId.getNumericId();
+                rows.scanTimes[rows.size] = jobId.getScanTime();
+                rows.size++;
+                summary.add(jobId.getScanTime());
+                if (rows.size == BLOCK_ROWS) {
+                    publish(queues, rows);
+                    rows = new Rows();
+                }
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        }
+        if (rows.size > 0 && failure == null) {
+            publish(queues, rows);
+        }
+        // The end of the batch, or that reading failed and the outputs are to be dropped
+        Rows end = new Rows(failure == null ? summary : null);
+        publish(queues, end);
+
+        for (Future<?> output : outputs) {
+            try {
+                output.get();
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted writing manifest for " + records, ex);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return summary;
+    }
+
+    private static void publish(List<BlockingQueue<Rows>> queues, Rows rows) throws IOException {
+        try {
+            for (BlockingQueue<Rows> queue : queues) {
+                queue.put(rows);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted writing manifest", ex);
+        }
+    }
+
+    /**
+     * Writes every block to one output until the end of the batch. After a failure the
+     * blocks are still taken, so that reading is never left waiting on this output.
+     */
+    private static void drain(ManifestSink sink, BlockingQueue<Rows> queue, Histogram writeTime) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        IOException failure = null;
+        try {
+            sink.begin();
+        } catch (IOException | RuntimeException ex) {
+            failure = asIOException(ex);
+        }
+        Rows rows = queue.take();
+        while (!rows.isEnd()) {
+            if (failure == null) {
+                try {
+                    sink.write(rows);
+                } catch (IOException | RuntimeException ex) {
+                    failure = asIOException(ex);
+                }
+            }
+            rows = queue.take();
+        }
+        if (failure == null && rows.summary != null) {
+            try {
+                sink.end(rows.summary);
+            } catch (IOException | RuntimeException ex) {
+                failure = asIOException(ex);
+            }
+        }
+        if (failure != null || rows.summary == null) {
+            sink.abort();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        writeTime.recordSince(started);
+    }
+
+    private static IOException asIOException(Exception ex) {
+        return ex instanceof IOException ? (IOException) ex : new IOException(ex.getMessage(), ex);
+    }
+
+    /**
+     * Formats a scan time for the CSV and JSON Lines outputs.
+     *
+     * @param epochSecond the scan time, in seconds since the epoch
+     * @return the local date and time, e.g. 2020-12-31T09:15:00
+     */
+    static String formatScanTime(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZONE).toString();
+    }
+
+    /**
+     * Formats a numeric Job ID with its leading zeros.
+     *
+     * @param id the numeric Job ID
+     * @param out the buffer to add it to
+     * @return the buffer
+     */
+    static StringBuilder appendJobId(long id, StringBuilder out) {
+        int start = out.length();
+        out.append(id);
+        for (int i = out.length() - start; i < 10; i++) {
+            out.insert(start, '0');
+        }
+        return out;
+    }
+
+    /**
+     * A block of rows, handed to every output. Once published a block is never changed.
+     * The operator and site are the same for every row of a batch, so they are given to
+     * each output once rather than held per row.
+     */
+    static final class Rows {
+
+        final long[] ids;
+        final long[] scanTimes;
+        int size;
+        // Only set on the block that ends the batch, null if reading failed
+        final Summary summary;
+        private final boolean end;
+
+        Rows() {
+            this.ids = new long[BLOCK_ROWS];
+            this.scanTimes = new long[BLOCK_ROWS];
+            this.summary = null;
+            this.end = false;
+        }
+
+        Rows(Summary summary) {
+            this.ids = new long[0];
+            this.scanTimes = new long[0];
+            this.summary = summary;
+            this.end = true;
+        }
+
+        boolean isEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Item count and scan time range of a batch.
+     */
+    public static final class Summary {
+
+        private int count;
+        private long firstScan = Long.MAX_VALUE;
+        private long lastScan = Long.MIN_VALUE;
+
+        void add(long scanTime) {
+            count++;
+            firstScan = Math.min(firstScan, scanTime);
+            lastScan = Math.max(lastScan, scanTime);
+        }
+
+        /**
+         * Gets the number of Job IDs in the batch.
+         *
+         * @return the number of Job IDs
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the time of the first scan.
+         *
+         * @return the time in seconds since the epoch, or Long.MAX_VALUE if the batch is empty
+         */
+        public long getFirstScan() {
+            return firstScan;
+        }
+
+        /**
+         * Gets the time of the last scan.
+         *
+         * @return the time in seconds since the epoch, or Long.MIN_VALUE if the batch is empty
+         */
+        public long getLastScan() {
+            return lastScan;
+        }
+    }
+}
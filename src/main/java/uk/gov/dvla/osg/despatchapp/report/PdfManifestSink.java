@@ -0,0 +1,170 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.SplitCharacter;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import uk.gov.dvla.osg.despatchapp.utilities.DateUtils;
+
+/**
+ * Writes the PDF despatch report for the stats team: a summary header followed by the
+ * Job IDs laid out in columns. The table is written out every FLUSH_ROWS rows, so memory
+ * use stays flat however large the batch is. The item count and scan times in the
+ * header are only known at the end of the batch, so the header holds a template for
+ * each line that is filled in when the report is finished, rather than the batch being
+ * read twice.
+ */
+class PdfManifestSink implements ManifestSink {
+
+    private static final int COLUMNS = 5;
+    // Rows added to the table before it is written out to the document
+    private static final int FLUSH_ROWS = 200;
+    private static final DateTimeFormatter SCAN_TIME = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    // Job IDs always fit their column, this skips iText's per character date check
+    private static final SplitCharacter NEVER_SPLIT = (start, current, end, cc, ck) -> false;
+    // Fonts are looked up once and shared by every report
+    private static final Font TITLE_FONT = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 14);
+    private static final Font ID_FONT = FontFactory.getFont(FontFactory.COURIER, 10);
+    private static final String HEADER = "Submitted on %s by %s\n";
+    // The summary lines, in the default paragraph font and leading
+    private static final float SUMMARY_FONT_SIZE = 12;
+    private static final float SUMMARY_HEIGHT = 16;
+    private static final float SUMMARY_DESCENT = 4;
+    private static final float SUMMARY_WIDTH = 400;
+
+    private final Path file;
+    private final String operator;
+    private OutputStream out;
+    private Document pdfDoc;
+    private PdfTemplate itemsLine;
+    private PdfTemplate scannedLine;
+    private PdfPTable table;
+    private int cells;
+
+    PdfManifestSink(Path file, String operator) {
+        this.file = file;
+        this.operator = operator;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        try {
+            out = new BufferedOutputStream(Files.newOutputStream(file));
+            // pdf document object to write to file
+            pdfDoc = new Document(PageSize.A4);
+            // pdf writer to write to the document
+            PdfWriter writer = PdfWriter.getInstance(pdfDoc, out);
+            pdfDoc.open();
+            // generate timestamp
+            String timeStamp = DateUtils.timeStamp("dd/MM/yyyy @ HH:mm:ss");
+            // add the report heading, with room for the summary once the batch is read
+            itemsLine = writer.getDirectContent().createTemplate(SUMMARY_WIDTH, SUMMARY_HEIGHT);
+            scannedLine = writer.getDirectContent().createTemplate(SUMMARY_WIDTH, SUMMARY_HEIGHT);
+            Paragraph p = new Paragraph();
+            p.add(new Phrase("Despatch Report\n\n", TITLE_FONT));
+            p.add(String.format(HEADER, timeStamp, operator));
+            p.add(new Chunk(Image.getInstance(itemsLine), 0, -SUMMARY_DESCENT));
+            p.add("\n");
+            p.add(new Chunk(Image.getInstance(scannedLine), 0, -SUMMARY_DESCENT));
+            p.add("\n");
+            p.setSpacingAfter(12);
+            pdfDoc.add(p);
+            // add the Job IDs, writing the table out as it fills
+            table = new PdfPTable(COLUMNS);
+            table.setWidthPercentage(100);
+            table.setComplete(false);
+            // every cell is copied from the default cell
+            table.getDefaultCell().setBorder(PdfPCell.NO_BORDER);
+        } catch (DocumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void write(ManifestWriter.Rows rows) throws IOException {
+        StringBuilder id = new StringBuilder(10);
+        try {
+            for (int i = 0; i < rows.size; i++) {
+                id.setLength(0);
+                Chunk jobId = new Chunk(ManifestWriter.appendJobId(rows.ids[i], id).toString(), ID_FONT);
+                jobId.setSplitCharacter(NEVER_SPLIT);
+                table.addCell(new Phrase(jobId));
+                if (++cells % (COLUMNS * FLUSH_ROWS) == 0) {
+                    pdfDoc.add(table);
+                }
+            }
+        } catch (DocumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void end(ManifestWriter.Summary summary) throws IOException {
+        try {
+            // pad the last row and write out what is left
+            table.completeRow();
+            table.setComplete(true);
+            pdfDoc.add(table);
+            writeSummary(summary);
+            pdfDoc.close();
+        } catch (DocumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeSummary(ManifestWriter.Summary summary) throws DocumentException, IOException {
+        BaseFont font = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+        writeLine(itemsLine, font, "Items: " + summary.getCount());
+        if (summary.getFirstScan() <= summary.getLastScan()) {
+            writeLine(scannedLine, font, "Scanned: " + format(summary.getFirstScan()) + " to " + format(summary.getLastScan()));
+        }
+    }
+
+    private static void writeLine(PdfTemplate line, BaseFont font, String text) {
+        line.beginText();
+        line.setFontAndSize(font, SUMMARY_FONT_SIZE);
+        line.setTextMatrix(0, SUMMARY_DESCENT);
+        line.showText(text);
+        line.endText();
+    }
+
+    private static String format(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault()).format(SCAN_TIME);
+    }
+
+    @Override
+    public void abort() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            ManifestWriter.LOGGER.warn("Unable to remove incomplete report {}, {}", file, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Copies of the most recent reports for a site, kept so they can be reprinted without
+ * rendering them again. Each report is stored under the hash of the batch records it
+ * was rendered from, so a batch that is reported twice is only rendered once. The file
+ * name holds everything shown in the reprint list:
+ * {site}_{batch time stamp}_{items}_{hash}.pdf
+ */
+public class ReportCache {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    // Number of reports kept for each site
+    private static final int SIZE = 10;
+    private static final int HASH_LENGTH = 16;
+
+    private final Path dir;
+    private final String site;
+
+    /**
+     * Instantiates the cache for a site.
+     *
+     * @param dir the cache folder, shared by all sites
+     * @param site the site name
+     */
+    public ReportCache(Path dir, String site) {
+        this.dir = dir;
+        this.site = site;
+    }
+
+    /**
+     * Finds the cached report for a batch.
+     *
+     * @param hash the content hash of the batch records
+     * @return the cached report, or null if the batch has not been reported
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    Path find(String hash) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        try (DirectoryStream<Path> reports = Files.newDirectoryStream(dir, site + "_*_" + shortHash(hash) + ".pdf")) {
+            for (Path report : reports) {
+                return report;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a copy of a report to the cache, removing the oldest reports once there are
+     * more than SIZE.
+     *
+     * @param report the rendered report
+     * @param hash the content hash of the batch records
+     * @param batchTimeStamp the time the batch was frozen
+     * @param items the number of Job IDs in the report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void put(Path report, String hash, String batchTimeStamp, int items) throws IOException {
+        Files.createDirectories(dir);
+        String name = String.join("_", site, batchTimeStamp, Integer.toString(items), shortHash(hash)) + ".pdf";
+        Files.copy(report, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+        List<Entry> entries = recent();
+        for (Entry old : entries.subList(Math.min(SIZE, entries.size()), entries.size())) {
+            LOGGER.debug("Removing {} from the report cache", old.file);
+            Files.deleteIfExists(old.file);
+        }
+    }
+
+    /**
+     * Marks a cached report as used, so it is kept ahead of older reports.
+     *
+     * @param report the cached report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    void touch(Path report) throws IOException {
+        Files.setLastModifiedTime(report, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Lists the cached reports for the site.
+     *
+     * @return the reports, newest first
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public List<Entry> recent() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> reports = Files.newDirectoryStream(dir, site + "_*.pdf")) {
+            for (Path report : reports) {
+                String[] parts = FilenameUtils.getBaseName(report.toString()).split("_");
+                // site, date, time, items, hash
+                if (parts.length == 5) {
+                    entries.add(new Entry(report, parts[1] + "_" + parts[2], Integer.parseInt(parts[3]), Files.getLastModifiedTime(report).toMillis()));
+                }
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.lastUsed, a.lastUsed));
+        return entries;
+    }
+
+    private static String shortHash(String hash) {
+        return hash.substring(0, Math.min(HASH_LENGTH, hash.length()));
+    }
+
+    /**
+     * A cached report, listed for reprinting.
+     */
+    public static class Entry {
+
+        private final Path file;
+        private final String batchTimeStamp;
+        private final int items;
+        private final long lastUsed;
+
+        Entry(Path file, String batchTimeStamp, int items, long lastUsed) {
+            this.file = file;
+            this.batchTimeStamp = batchTimeStamp;
+            this.items = items;
+            this.lastUsed = lastUsed;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /*
+         * Shown in the reprint list, e.g. 18/10/2026 09:12:43 - 5 items
+         * (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            // time stamp is ddMMyyyy_HHmmss
+            String ts = batchTimeStamp;
+            return String.format("%s/%s/%s %s:%s:%s - %d %s", ts.substring(0, 2), ts.substring(2, 4), ts.substring(4, 8),
+                    ts.substring(9, 11), ts.substring(11, 13), ts.substring(13, 15), items, items == 1 ? "item" : "items");
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.itextpdf.text.DocumentException;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.ReportFormat;
+import uk.gov.dvla.osg.despatchapp.utilities.ContentHash;
+import uk.gov.dvla.osg.despatchapp.utilities.RepositoryLayout;
+import uk.gov.dvla.osg.despatchapp.views.ErrMsgDialog;
+import uk.gov.dvla.osg.rpd.web.config.Session;
+
+/**
+ * Renders and opens despatch reports on a background thread, so neither a submission
+ * nor the GUI waits for the PDF to be written or for the PDF viewer to start. Reports
+ * are run one at a time, in the order they were asked for. Each report is written in
+ * every configured format by one {@link ManifestWriter}.
+ */
+public class ReportWorker {
+
+    static final Logger LOGGER = LogManager.getLogger();
+    private static final Histogram REPORT_TIME = Metrics.timer("submit.report");
+
+    private final String reportFile;
+    private final String site;
+    private final Set<ReportFormat> formats;
+    private final ReportCache cache;
+    // Reports asked for and not yet finished
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "report-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Instantiates a new report worker.
+     *
+     * @param reportFile the report file prefix for the site
+     * @param site the site name, written on each row of the CSV and JSON Lines reports
+     * @param formats the formats each report is written in
+     * @param cache the cache of recent PDF reports for the site
+     */
+    public ReportWorker(String reportFile, String site, Set<ReportFormat> formats, ReportCache cache) {
+        this.reportFile = reportFile;
+        this.site = site;
+        this.formats = formats;
+        this.cache = cache;
+    }
+
+    /**
+     * Writes the report for a batch in each format and displays the PDF. If the same
+     * records have been reported before, the cached PDF is used rather than rendering it
+     * again, and only the other formats are written.
+     *
+     * @param records the file holding the submitted records
+     * @param batchTimeStamp the time the batch was frozen
+     * @return completes with the PDF report, or the first other format if there is no PDF,
+     *         once it has been written, or null if it could not be
+     */
+    public CompletableFuture<Path> render(Path records, String batchTimeStamp) {
+        queued.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            try {
+                return renderNow(records, batchTimeStamp);
+            } finally {
+                REPORT_TIME.recordSince(started);
+                queued.decrementAndGet();
+            }
+        }, worker);
+    }
+
+    private Path renderNow(Path records, String batchTimeStamp) {
+        try {
+            String hash = ContentHash.sha256(records);
+            String fName = Report.getFileName(RepositoryLayout.shard(reportFile, LocalDate.now()));
+            Files.createDirectories(Paths.get(fName).getParent());
+            boolean pdf = formats.contains(ReportFormat.PDF);
+            Path report = null;
+            ManifestWriter writer = new ManifestWriter(Session.getInstance().getUserName(), site);
+            Path cached = pdf ? cache.find(hash) : null;
+            for (ReportFormat format : formats) {
+                String name = Report.withExtension(fName, format);
+                Report.validateFile(name);
+                Path output = Paths.get(name);
+                report = report == null ? output : report;
+                if (format == ReportFormat.PDF && cached != null) {
+                    LOGGER.info("Report for batch {} taken from the cache", batchTimeStamp);
+                    Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+                    cache.touch(cached);
+                } else {
+                    writer.add(format, output);
+                }
+            }
+            if (!writer.isEmpty()) {
+                int items = writer.write(records).getCount();
+                if (pdf && cached == null) {
+                    try {
+                        cache.put(Paths.get(fName), hash, batchTimeStamp, items);
+                    } catch (IOException ex) {
+                        LOGGER.warn("Unable to cache report for batch {}, {}", batchTimeStamp, ex.getMessage());
+                    }
+                }
+            }
+            if (pdf) {
+                Report.display(fName);
+            }
+            return report;
+        } catch (IOException e) {
+            if (e.getCause() instanceof DocumentException) {
+                ErrMsgDialog.show(e.getCause().getClass().getSimpleName(), e.getMessage());
+                return null;
+            }
+            ErrMsgDialog.show(e.getClass().getSimpleName(), "The report pdf is already open or unavailable!");
+        }
+        return null;
+    }
+
+    /**
+     * Lists the reports that can be reprinted.
+     *
+     * @return the cached reports, newest first
+     */
+    public List<ReportCache.Entry> recentReports() {
+        try {
+            return cache.recent();
+        } catch (IOException ex) {
+            LOGGER.error("Unable to list cached reports, {}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Opens a cached report again.
+     *
+     * @param entry the cached report
+     */
+    public void reprint(ReportCache.Entry entry) {
+        queued.incrementAndGet();
+        worker.execute(() -> {
+            try {
+                cache.touch(entry.getFile());
+                Report.display(entry.getFile().toString());
+            } catch (IOException e) {
+                ErrMsgDialog.show(e.getClass().getSimpleName(), "The report pdf is already open or unavailable!");
+            } finally {
+                queued.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Gets the number of reports waiting to be written or opened, including the one
+     * being worked on.
+     *
+     * @return the number of reports queued
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Stops the worker once any reports already asked for have been written.
+     */
+    public void shutdown() {
+        worker.shutdown();
+    }
+
+    /**
+     * Waits for the reports asked for before {@link #shutdown()} to be written.
+     *
+     * @param timeout the longest time to wait
+     * @param unit the unit of the timeout
+     * @return true, if every report was written before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return worker.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,77 @@
+package uk.gov.dvla.osg.despatchapp.report;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An output of one line of text per Job ID. Each line is built in a reused buffer, so
+ * writing a row does not allocate beyond its formatted scan time.
+ */
+abstract class TextManifestSink implements ManifestSink {
+
+    private final Path file;
+    private final StringBuilder line = new StringBuilder(128);
+    private Writer writer;
+
+    TextManifestSink(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the first line of the file.
+     *
+     * @return the header line, or null if the format has none
+     */
+    abstract String header();
+
+    /**
+     * Adds a row to the line buffer, without its newline.
+     *
+     * @param line the line buffer
+     * @param id the numeric Job ID
+     * @param scanTime the scan time, in seconds since the epoch
+     */
+    abstract void appendRow(StringBuilder line, long id, long scanTime);
+
+    @Override
+    public void begin() throws IOException {
+        writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 64 * 1024);
+        String header = header();
+        if (header != null) {
+            writer.write(header);
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public void write(ManifestWriter.Rows rows) throws IOException {
+        for (int i = 0; i < rows.size; i++) {
+            line.setLength(0);
+            appendRow(line, rows.ids[i], rows.scanTimes[i]);
+            line.append('\n');
+            writer.append(line);
+        }
+    }
+
+    @Override
+    public void end(ManifestWriter.Summary summary) throws IOException {
+        writer.close();
+        writer = null;
+    }
+
+    @Override
+    public void abort() {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            ManifestWriter.LOGGER.warn("Unable to remove incomplete manifest {}, {}", file, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads DAT, EOT & PDF files back out of a day bundle written by the
+ * {@link DayArchiver}. Only the zip central directory is read when the bundle is
+ * opened, and each member is then read on its own, so pulling one file out of a large
+ * bundle does not read the rest of it. The contents of each member are checked against
+ * its CRC as they are read.
+ */
+public class ArchiveReader implements Closeable {
+
+    private final Path bundle;
+    private final ZipFile zip;
+
+    /**
+     * Opens a bundle.
+     *
+     * @param bundle the bundle
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public ArchiveReader(Path bundle) throws IOException {
+        this.bundle = bundle;
+        this.zip = new ZipFile(bundle.toFile());
+    }
+
+    /**
+     * Opens a site's bundle for a day.
+     *
+     * @param prefix a DAT, EOT or report file prefix from the config, including its folder
+     * @param site the site name
+     * @param day the day
+     * @return the reader
+     * @throws NoSuchFileException if the day has not been archived
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static ArchiveReader open(String prefix, String site, LocalDate day) throws IOException {
+        Path bundle = RepositoryLayout.bundle(RepositoryLayout.root(prefix), site, day);
+        if (!Files.isRegularFile(bundle)) {
+            throw new NoSuchFileException(bundle.toString());
+        }
+        return new ArchiveReader(bundle);
+    }
+
+    /**
+     * Gets the names of the files in the bundle, in the order they were archived.
+     *
+     * @return the file names
+     */
+    public List<String> list() {
+        List<String> names = new ArrayList<>(zip.size());
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+            names.add(entries.nextElement().getName());
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Checks whether a file is in the bundle.
+     *
+     * @param name the file name
+     * @return true, if the file is in the bundle
+     */
+    public boolean contains(String name) {
+        return zip.getEntry(name) != null;
+    }
+
+    /**
+     * Opens a file in the bundle for reading.
+     *
+     * @param name the file name
+     * @return the contents of the file
+     * @throws NoSuchFileException if the file is not in the bundle
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InputStream open(String name) throws IOException {
+        return zip.getInputStream(entry(name));
+    }
+
+    /**
+     * Copies a file out of the bundle into a folder, with its original modified time.
+     *
+     * @param name the file name
+     * @param folder the folder to copy it to
+     * @return the copied file
+     * @throws NoSuchFileException if the file is not in the bundle
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Path extract(String name, Path folder) throws IOException {
+        ZipEntry entry = entry(name);
+        // Member names are plain file names, anything else is not extracted
+        Path target = folder.resolve(name).normalize();
+        if (!folder.normalize().equals(target.getParent())) {
+            throw new IOException("Member [" + name + "] of " + bundle + " is not a plain file name");
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, target, REPLACE_EXISTING);
+        }
+        FileTime modified = entry.getLastModifiedTime();
+        if (modified != null) {
+            Files.setLastModifiedTime(target, modified);
+        }
+        return target;
+    }
+
+    private ZipEntry entry(String name) throws NoSuchFileException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new NoSuchFileException(bundle.toString(), name, "not in the bundle");
+        }
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
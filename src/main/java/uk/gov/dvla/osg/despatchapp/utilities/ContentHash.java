@@ -0,0 +1,50 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes file contents, so files with the same content can be recognised without
+ * comparing them byte by byte.
+ */
+public class ContentHash {
+
+    /**
+     * Calculates the SHA-256 hash of a file.
+     *
+     * @param file the file
+     * @return the hash as hex digits
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            while (in.read(buffer) != -1) {
+                // digest is updated as the file is read
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prevents instantiation of the class.
+     */
+    private ContentHash() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,231 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+
+/**
+ * Rolls a site's DAT, EOT & PDF files for each completed day into one zip bundle (see
+ * {@link RepositoryLayout#bundle(Path, String, LocalDate)}), so the network share holds
+ * one file per site per day instead of thousands. Each file is a member of the bundle,
+ * under its own name and with its own modified time, and is listed in the zip central
+ * directory, so one member can be read without the rest (see {@link ArchiveReader}).
+ * <p>
+ * The bundle is written to a temporary file and moved into place before the loose files
+ * are deleted, so an interrupted run leaves both and the next run finishes it. Files
+ * that turn up in a day folder after its bundle was written, e.g. when a batch from
+ * that day is sent again, are merged into the bundle at the next run. Runs share the
+ * thread of the {@link RetentionSweeper}, which deletes whole bundles once they are
+ * past the retention period.
+ */
+public class DayArchiver {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private static final long FIRST_RUN_MINUTES = 5;
+    private static final long RUN_MINUTES = 60;
+    // Files changed more recently than this may still be being written or sent
+    private static final long SETTLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final Histogram ARCHIVE_TIME = Metrics.timer("repository.archive");
+    private static final Set<String> SCHEDULED = ConcurrentHashMap.newKeySet();
+
+    private final String site;
+    // Start of the site's file names in each folder that holds day folders
+    private final Map<Path, List<String>> namePrefixes;
+    private final int retentionDays;
+
+    DayArchiver(String site, Map<Path, List<String>> namePrefixes, int retentionDays) {
+        this.site = site;
+        this.namePrefixes = namePrefixes;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Starts archiving a site's files in the background. A site that is already being
+     * archived is ignored.
+     *
+     * @param site the site name, used in the bundle names
+     * @param prefixes the DAT, EOT and report file prefixes from the config, including their folders
+     * @param retentionDays file retention period in days, older days are left to be deleted
+     */
+    public static void schedule(String site, Collection<String> prefixes, int retentionDays) {
+        Map<Path, List<String>> namePrefixes = new LinkedHashMap<>();
+        for (String prefix : prefixes) {
+            Path root = RepositoryLayout.root(prefix).toAbsolutePath().normalize();
+            List<String> names = namePrefixes.computeIfAbsent(root, r -> new ArrayList<>());
+            names.add(RepositoryLayout.fileNamePrefix(prefix));
+        }
+        if (SCHEDULED.add(site + namePrefixes)) {
+            DayArchiver archiver = new DayArchiver(site, namePrefixes, retentionDays);
+            RetentionSweeper.scheduler().scheduleWithFixedDelay(archiver::archive, FIRST_RUN_MINUTES, RUN_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Archives every completed day that still has loose files for the site.
+     */
+    void archive() {
+        long started = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.minusDays(retentionDays);
+        for (Map.Entry<Path, List<String>> entry : namePrefixes.entrySet()) {
+            Path root = entry.getKey();
+            List<Path> folders = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, p -> isArchivable(p, cutoff, today))) {
+                stream.forEach(folders::add);
+            } catch (IOException | RuntimeException ex) {
+                // Logged and tried again at the next run, an exception would stop the schedule
+                LOGGER.error("Unable to list day folders in " + root, ex);
+                continue;
+            }
+            for (Path folder : folders) {
+                try {
+                    archiveDay(root, folder, entry.getValue());
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.error("Unable to archive " + site + " files in " + folder, ex);
+                }
+            }
+        }
+        ARCHIVE_TIME.recordSince(started);
+    }
+
+    private static boolean isArchivable(Path folder, LocalDate cutoff, LocalDate today) {
+        LocalDate day = RepositoryLayout.dayOf(folder);
+        return day != null && !day.isBefore(cutoff) && day.isBefore(today) && Files.isDirectory(folder);
+    }
+
+    /**
+     * Moves the site's files in a day folder into the day's bundle, keeping any members
+     * already in the bundle that have not been written again. The folder is removed once
+     * it is empty.
+     *
+     * @return the number of files archived
+     */
+    int archiveDay(Path root, Path folder, List<String> names) throws IOException {
+        long settled = System.currentTimeMillis() - SETTLE_MILLIS;
+        Map<String, Path> files = new LinkedHashMap<>();
+        boolean unsettled = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                if (names.stream().noneMatch(name::startsWith) || !Files.isRegularFile(p)) {
+                    continue;
+                }
+                if (Files.getLastModifiedTime(p).toMillis() > settled) {
+                    unsettled = true;
+                } else {
+                    files.put(name, p);
+                }
+            }
+        }
+        if (unsettled) {
+            // Left until the day is quiet, rather than bundled in two goes
+            LOGGER.debug("Files in {} have just changed, archiving later", folder);
+            return 0;
+        }
+        if (files.isEmpty()) {
+            deleteIfEmpty(folder);
+            return 0;
+        }
+
+        Path bundle = RepositoryLayout.bundle(root, site, RepositoryLayout.dayOf(folder));
+        Path tmp = bundle.resolveSibling(bundle.getFileName() + TMP_EXTENSION);
+        int kept = 0;
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp, CREATE, TRUNCATE_EXISTING, WRITE)))) {
+            if (Files.exists(bundle)) {
+                kept = copyMembers(bundle, out, files.keySet());
+            }
+            for (Map.Entry<String, Path> file : files.entrySet()) {
+                BasicFileAttributes attrs = Files.readAttributes(file.getValue(), BasicFileAttributes.class);
+                ZipEntry entry = new ZipEntry(file.getKey());
+                entry.setLastModifiedTime(attrs.lastModifiedTime());
+                entry.setSize(attrs.size());
+                out.putNextEntry(entry);
+                Files.copy(file.getValue(), out);
+                out.closeEntry();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, bundle, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        for (Path file : files.values()) {
+            Files.deleteIfExists(file);
+        }
+        deleteIfEmpty(folder);
+        LOGGER.info("Archived {} {} files from {} to {}, {} members kept from before", files.size(), site, folder, bundle, kept);
+        return files.size();
+    }
+
+    /**
+     * Copies the members of an existing bundle, except those about to be written again.
+     *
+     * @return the number of members copied
+     */
+    private static int copyMembers(Path bundle, ZipOutputStream out, Set<String> replaced) throws IOException {
+        int copied = 0;
+        Set<String> seen = new HashSet<>(replaced);
+        try (ZipFile zip = new ZipFile(bundle.toFile())) {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry old = entries.nextElement();
+                if (!seen.add(old.getName())) {
+                    continue;
+                }
+                ZipEntry entry = new ZipEntry(old.getName());
+                entry.setLastModifiedTime(old.getLastModifiedTime());
+                out.putNextEntry(entry);
+                try (InputStream in = zip.getInputStream(old)) {
+                    IOUtils.copy(in, out);
+                }
+                out.closeEntry();
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    private static void deleteIfEmpty(Path folder) {
+        try {
+            Files.deleteIfExists(folder);
+        } catch (DirectoryNotEmptyException ex) {
+            // Still holds another site's files
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to delete {}, {}", folder, ex.getMessage());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javafx.animation.FadeTransition;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.scene.Node;
 import javafx.scene.control.Label;
@@ -20,6 +21,12 @@ import javafx.util.Duration;
  */
 public class FxUtils {
     static final Logger LOGGER = LogManager.getLogger();
+    private static final String FADE_KEY = "fadeTransition";
+    private static final String SHOWN_AT_KEY = "messageShownAt";
+    private static final String PENDING_KEY = "pendingMessage";
+    // Shortest time a message is shown before it is replaced, so a burst of scans
+    // updates the label a few times a second rather than for every scan
+    private static final long MESSAGE_INTERVAL_NANOS = 250_000_000L;
     /**
      * Disable the node by setting its visibility and managed properties to false.
      * @param node the node
@@ -47,23 +54,55 @@ public class FxUtils {
     }
 
     public static void displayErrorMessage(Label label, String msg) {
-        label.setTextFill(Paint.valueOf("Red"));
-        displayMessage(label, msg);
+        displayMessage(label, msg, Paint.valueOf("Red"));
     }
     
     public static void displaySuccessMessage(Label label, String msg) {
-        label.setTextFill(Paint.valueOf("Green"));
-        displayMessage(label, msg);
+        displayMessage(label, msg, Paint.valueOf("Green"));
     }
     
+    /**
+     * Displays a status message that stays on screen until it is replaced.
+     * @param label the label
+     * @param msg the message
+     */
+    public static void displayStatusMessage(Label label, String msg) {
+        label.getProperties().remove(PENDING_KEY);
+        stopFade(label);
+        label.setTextFill(Paint.valueOf("Black"));
+        label.setText(msg);
+        label.setOpacity(1);
+    }
+
     /**
      * Displays messages for the Print and Excel buttons. Messages are displayed for
-     * 3 seconds and then disappear.
+     * 3 seconds and then disappear. A message that comes too soon after the last one is
+     * held back, and only the latest message held back is shown once the interval is up.
      */
-    private static void displayMessage(Label label, String msg) {
+    private static void displayMessage(Label label, String msg, Paint colour) {
+        long now = System.nanoTime();
+        Object shownAt = label.getProperties().get(SHOWN_AT_KEY);
+        long wait = shownAt == null ? 0 : MESSAGE_INTERVAL_NANOS - (now - (Long) shownAt);
+        if (wait > 0) {
+            if (label.getProperties().put(PENDING_KEY, new PendingMessage(msg, colour)) == null) {
+                PauseTransition pause = new PauseTransition(Duration.millis(wait / 1_000_000.0));
+                pause.setOnFinished(e -> {
+                    PendingMessage pending = (PendingMessage) label.getProperties().remove(PENDING_KEY);
+                    if (pending != null) {
+                        displayMessage(label, pending.msg, pending.colour);
+                    }
+                });
+                pause.play();
+            }
+            return;
+        }
+        label.getProperties().put(SHOWN_AT_KEY, now);
+        stopFade(label);
+        label.setTextFill(colour);
         label.setText(msg);
         label.setOpacity(1);
         FadeTransition fadeTransition = new FadeTransition(Duration.seconds(3), label);
+        label.getProperties().put(FADE_KEY, fadeTransition);
         fadeTransition.setDelay(Duration.seconds(4));
         fadeTransition.setFromValue(0.99);
         fadeTransition.setToValue(0.0);
@@ -72,6 +111,29 @@ public class FxUtils {
         label.requestFocus();
     }
 
+    /**
+     * Stops the fade of an earlier message, so it cannot hide the new one.
+     */
+    private static void stopFade(Label label) {
+        Object fadeTransition = label.getProperties().remove(FADE_KEY);
+        if (fadeTransition != null) {
+            ((FadeTransition) fadeTransition).stop();
+        }
+    }
+
+    /**
+     * A message held back until the last one has been shown for long enough.
+     */
+    private static final class PendingMessage {
+        private final String msg;
+        private final Paint colour;
+
+        private PendingMessage(String msg, Paint colour) {
+            this.msg = msg;
+            this.colour = colour;
+        }
+    }
+
     /**
      * Prevents instantiation of the class.
      */
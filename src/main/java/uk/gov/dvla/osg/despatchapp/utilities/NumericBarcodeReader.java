@@ -0,0 +1,117 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import javafx.scene.input.KeyEvent;
+
+/**
+ * Barcode reader for the scan hot path. Characters are collected into a fixed buffer
+ * and digits are accumulated into a long as they arrive, so a completed Job ID can be
+ * read with {@link #getJobId()} without building a String. Handles events for a single
+ * window only and is not thread-safe.
+ */
+public class NumericBarcodeReader {
+
+    private static final long THRESHOLD_NANOS = 100_000_000L;
+    private static final int MIN_BARCODE_LENGTH = 10;
+    private static final int JID_LENGTH = 10;
+    private static final int CAPACITY = 64;
+    // ENTER comes as 0x000d
+    private static final char ENTER = (char) 0x000d;
+
+    private final char[] buffer = new char[CAPACITY];
+    private int length;
+    private long value;
+    private boolean numeric = true;
+    private boolean complete;
+    private long lastEventTime;
+
+    /**
+     * Handles input and ensures it came from the Barcode Reader. Method is run sequentially for
+     * every character read by the barcode reader, until the enter key is pressed. If keyboard
+     * input is used, the gap between key-presses will be larger than the threshold, so the
+     * buffer is cleared. Additionally, if 'Enter' is received as an input before the
+     * minimum barcode length is reached, then input is discarded.
+     * @param event the event containing the input character
+     * @return true, when a full barcode has been scanned, false for every character prior to the 'Enter' key,
+     * or when keyboard has been used as input.
+     */
+    public boolean handle(KeyEvent event) {
+        String character = event.getCharacter();
+        if (character.isEmpty()) {
+            return false;
+        }
+        if (handle(character.charAt(0), System.nanoTime())) {
+            return true;
+        }
+        event.consume();
+        return false;
+    }
+
+    /**
+     * Handles a single input character.
+     * @param c the input character
+     * @param now the time the character arrived, from {@link System#nanoTime()}
+     * @return true, when a full barcode has been scanned
+     */
+    public boolean handle(char c, long now) {
+        // events must come fast enough to separate from manual input, and a
+        // completed barcode is discarded once the next one starts
+        if (complete || now - lastEventTime > THRESHOLD_NANOS) {
+            reset();
+        }
+        lastEventTime = now;
+
+        if (c == ENTER) {
+            if (length >= MIN_BARCODE_LENGTH) {
+                complete = true;
+                return true;
+            }
+            reset();
+            return false;
+        }
+        if (length < CAPACITY) {
+            buffer[length] = c;
+        }
+        if (c >= '0' && c <= '9') {
+            // stop accumulating once the barcode is too long to be a Job ID
+            if (length < JID_LENGTH) {
+                value = value * 10 + (c - '0');
+            }
+        } else {
+            numeric = false;
+        }
+        length++;
+        return false;
+    }
+
+    /**
+     * Call when the handle event returns true, to check if the barcode is a ten-digit Job ID.
+     * @return true, if the barcode is a valid Job ID
+     */
+    public boolean isJobId() {
+        return numeric && length == JID_LENGTH;
+    }
+
+    /**
+     * Call when {@link #isJobId()} returns true, to retrieve the scanned Job ID.
+     * @return the numeric Job ID
+     */
+    public long getJobId() {
+        return value;
+    }
+
+    /**
+     * Call when the handle event returns true, to retrieve the scanned barcode as text.
+     * Barcodes longer than the buffer are truncated.
+     * @return the barcode
+     */
+    public String getBarcode() {
+        return new String(buffer, 0, Math.min(length, CAPACITY));
+    }
+
+    private void reset() {
+        length = 0;
+        value = 0;
+        numeric = true;
+        complete = false;
+    }
+}
@@ -0,0 +1,131 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Works out where DAT, EOT and report files are written. Each file prefix from the
+ * config is split into its folder and name, and files are written to a folder for the
+ * day beneath it, e.g. {repoDir}\20201231\{prefix}{timestamp}.DAT, so that a whole day
+ * can be removed once it is past the retention period.
+ * <p>
+ * Once a day is over, each site's files for the day are moved into one zip bundle next
+ * to the day folders, e.g. {repoDir}\20201231-MORRISTON.zip (see {@link DayArchiver}).
+ */
+public class RepositoryLayout {
+
+    private static final DateTimeFormatter DAY_FOLDER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter TIME_STAMP_DAY = DateTimeFormatter.ofPattern("ddMMyyyy");
+    private static final String BUNDLE_EXTENSION = ".zip";
+
+    private RepositoryLayout() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets the folder that holds the day folders for a file prefix.
+     *
+     * @param prefix the file prefix from the config, including its folder
+     * @return the folder
+     */
+    public static Path root(String prefix) {
+        int cut = lastSeparator(prefix);
+        return cut < 0 ? Paths.get("").toAbsolutePath() : Paths.get(prefix.substring(0, cut + 1));
+    }
+
+    /**
+     * Moves a file prefix into the folder for the given day.
+     *
+     * @param prefix the file prefix from the config, including its folder
+     * @param day the day the files belong to
+     * @return the prefix within the day folder
+     */
+    public static String shard(String prefix, LocalDate day) {
+        Path folder = root(prefix).resolve(DAY_FOLDER.format(day));
+        return folder.toString() + File.separator + fileNamePrefix(prefix);
+    }
+
+    /**
+     * Moves a file prefix into the folder for the day a batch was frozen, so that every
+     * attempt to send the batch uses the same files.
+     *
+     * @param prefix the file prefix from the config, including its folder
+     * @param timeStamp the batch time stamp, in the format ddMMyyyy_HHmmss
+     * @return the prefix within the day folder
+     */
+    public static String shard(String prefix, String timeStamp) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(timeStamp.substring(0, 8), TIME_STAMP_DAY);
+        } catch (DateTimeParseException | IndexOutOfBoundsException ex) {
+            day = LocalDate.now();
+        }
+        return shard(prefix, day);
+    }
+
+    /**
+     * Reads the day from the name of a day folder.
+     *
+     * @param folder the folder
+     * @return the day, or null if the folder is not a day folder
+     */
+    public static LocalDate dayOf(Path folder) {
+        String name = folder.getFileName().toString();
+        if (name.length() != 8) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name, DAY_FOLDER);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the bundle that a site's files for a day are archived to.
+     *
+     * @param root the folder that holds the day folders
+     * @param site the site
+     * @param day the day
+     * @return the bundle
+     */
+    public static Path bundle(Path root, String site, LocalDate day) {
+        return root.resolve(DAY_FOLDER.format(day) + "-" + site + BUNDLE_EXTENSION);
+    }
+
+    /**
+     * Reads the day from the name of a bundle.
+     *
+     * @param bundle the bundle
+     * @return the day, or null if the file is not a bundle
+     */
+    public static LocalDate bundleDayOf(Path bundle) {
+        String name = bundle.getFileName().toString();
+        if (name.length() <= 9 + BUNDLE_EXTENSION.length() || name.charAt(8) != '-' || !name.endsWith(BUNDLE_EXTENSION)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(name.substring(0, 8), DAY_FOLDER);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the name of the file a prefix from the config starts, without its folder.
+     *
+     * @param prefix the file prefix from the config, including its folder
+     * @return the start of the file name
+     */
+    public static String fileNamePrefix(String prefix) {
+        return prefix.substring(lastSeparator(prefix) + 1);
+    }
+
+    private static int lastSeparator(String prefix) {
+        return Math.max(prefix.lastIndexOf('/'), prefix.lastIndexOf('\\'));
+    }
+}
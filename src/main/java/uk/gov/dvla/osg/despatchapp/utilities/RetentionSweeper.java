@@ -0,0 +1,276 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Histogram;
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.rpd.web.config.Session;
+
+/**
+ * Removes DAT, EOT & PDF files once they are past the retention period. Files that are
+ * not successfully sent to RPD remain in the repository, and files that are not
+ * manually moved or deleted by the Dev team are removed here.
+ * <p>
+ * Sweeps run on a background thread, away from submissions. Files are written to day
+ * folders (see {@link RepositoryLayout}), so an expired day is removed as a whole
+ * without reading the dates of its files, as is each day bundle written by the
+ * {@link DayArchiver}. Files left loose in the repository by
+ * earlier versions are checked {@value #LEGACY_FILES_PER_SWEEP} at a time, in name
+ * order, and a cursor saved in the repository records where the next sweep carries on.
+ */
+public class RetentionSweeper {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String[] EXTENSIONS = new String[] { "DAT", "EOT", "PDF" };
+    private static final String CURSOR_FILE = ".retention";
+    private static final String LEGACY_CURSOR = "legacyCursor";
+    private static final int LEGACY_FILES_PER_SWEEP = 500;
+    private static final long FIRST_SWEEP_MINUTES = 1;
+    private static final long SWEEP_MINUTES = 60;
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final Histogram SWEEP_TIME = Metrics.timer("retention.sweep");
+
+    // One thread sweeps every repository, and each repository is only swept once
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "retention-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<Path> SCHEDULED = ConcurrentHashMap.newKeySet();
+
+    private final Path root;
+    private final int retentionDays;
+    private final Path cursorFile;
+
+    RetentionSweeper(Path root, int retentionDays) {
+        this.root = root;
+        this.retentionDays = retentionDays;
+        this.cursorFile = root.resolve(CURSOR_FILE);
+    }
+
+    /**
+     * Gets the thread that sweeps and archives the repositories, so that an archive is
+     * never written while the same day is being deleted.
+     *
+     * @return the scheduler
+     */
+    static ScheduledExecutorService scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * Starts sweeping the given folders in the background. Folders that are already
+     * being swept are ignored, so sites that share a repository can all ask for it.
+     *
+     * @param roots the folders that hold the day folders
+     * @param retentionDays file retention period in days
+     */
+    public static void schedule(Collection<Path> roots, int retentionDays) {
+        for (Path root : roots) {
+            if (SCHEDULED.add(root.toAbsolutePath().normalize())) {
+                RetentionSweeper sweeper = new RetentionSweeper(root, retentionDays);
+                SCHEDULER.scheduleWithFixedDelay(sweeper::sweep, FIRST_SWEEP_MINUTES, SWEEP_MINUTES, TimeUnit.MINUTES);
+            }
+        }
+    }
+
+    /**
+     * Removes expired day folders and bundles, then checks the next set of loose files.
+     */
+    void sweep() {
+        long started = System.nanoTime();
+        try {
+            if (!Files.isDirectory(root)) {
+                LOGGER.fatal("Directory [{}] does not exist or is not accessible. Please check config file.", root);
+                return;
+            }
+            if (!Files.isWritable(root)) {
+                LOGGER.fatal("User [{}] does not have permission to delete from {}", Session.getInstance().getUserName(), root);
+                return;
+            }
+            LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+            List<Path> expired = new ArrayList<>();
+            try (DirectoryStream<Path> folders = Files.newDirectoryStream(root, p -> isExpired(p, cutoff))) {
+                folders.forEach(expired::add);
+            }
+            int fromFolders = 0;
+            int bundles = 0;
+            for (Path folder : expired) {
+                if (Files.isDirectory(folder)) {
+                    fromFolders += deleteFolder(folder);
+                } else if (deleteFile(folder)) {
+                    LOGGER.info("Deleted day bundle from repository after {} days: {}", retentionDays, folder);
+                    bundles++;
+                }
+            }
+            Properties cursor = loadCursor();
+            int loose = sweepLooseFiles(cursor);
+            saveCursor(cursor);
+            LOGGER.info("Retention sweep of {} reclaimed {} files, {} from {} expired day folders, {} day bundles and {} loose files",
+                    root, fromFolders + bundles + loose, fromFolders, expired.size() - bundles, bundles, loose);
+        } catch (IOException | RuntimeException ex) {
+            // Logged and tried again at the next sweep, an exception would stop the schedule
+            LOGGER.error("Retention sweep of " + root + " failed", ex);
+        }
+        SWEEP_TIME.recordSince(started);
+    }
+
+    private static boolean isExpired(Path p, LocalDate cutoff) {
+        LocalDate day = RepositoryLayout.dayOf(p);
+        if (day != null) {
+            return day.isBefore(cutoff) && Files.isDirectory(p);
+        }
+        day = RepositoryLayout.bundleDayOf(p);
+        return day != null && day.isBefore(cutoff) && Files.isRegularFile(p);
+    }
+
+    /**
+     * Deletes a day folder and everything in it. Files that cannot be deleted are
+     * logged and left for the next sweep.
+     *
+     * @return the number of files deleted
+     */
+    private int deleteFolder(Path folder) throws IOException {
+        int[] deleted = new int[1];
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (deleteFile(file)) {
+                    deleted[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                LOGGER.warn("Unable to read {}, {}", file, ex.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException ex) {
+                deleteFile(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        LOGGER.info("Deleted day folder from repository after {} days: {}", retentionDays, folder);
+        return deleted[0];
+    }
+
+    /**
+     * Checks the next {@value #LEGACY_FILES_PER_SWEEP} loose files after the cursor and
+     * deletes those older than the retention period. The cursor goes back to the start
+     * once the end of the folder is reached.
+     *
+     * @param cursor the saved cursor, moved on past the files checked
+     * @return the number of files deleted
+     */
+    private int sweepLooseFiles(Properties cursor) throws IOException {
+        String after = cursor.getProperty(LEGACY_CURSOR, "");
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, RetentionSweeper::isRepositoryFile)) {
+            for (Path p : stream) {
+                if (p.getFileName().toString().compareTo(after) > 0) {
+                    files.add(p);
+                }
+            }
+        }
+        files.sort(Comparator.comparing(p -> p.getFileName().toString()));
+
+        long purgeTime = System.currentTimeMillis() - ((long) retentionDays * DAY_IN_MILLIS);
+        int checked = Math.min(files.size(), LEGACY_FILES_PER_SWEEP);
+        int deleted = 0;
+        for (Path p : files.subList(0, checked)) {
+            if (getFileCreationDate(p) < purgeTime) {
+                LOGGER.info("Deleting file from repository after {} days: {}", retentionDays, p);
+                deleted += deleteFile(p) ? 1 : 0;
+            }
+        }
+        if (checked < files.size()) {
+            cursor.setProperty(LEGACY_CURSOR, files.get(checked - 1).getFileName().toString());
+        } else {
+            cursor.remove(LEGACY_CURSOR);
+        }
+        return deleted;
+    }
+
+    private static boolean isRepositoryFile(Path p) {
+        return StringUtils.endsWithAny(p.getFileName().toString().toUpperCase(), EXTENSIONS);
+    }
+
+    /**
+     * Gets the file creation date.
+     *
+     * @param p the file
+     * @return the file creation date if successful, else MAX_VALUE
+     */
+    private static long getFileCreationDate(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class).creationTime().toMillis();
+        } catch (IOException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Try to delete file and log filename if unsuccessful.
+     *
+     * @param p the file to delete
+     * @return true, if the file was deleted
+     */
+    private static boolean deleteFile(Path p) {
+        try {
+            return Files.deleteIfExists(p);
+        } catch (IOException ex) {
+            LOGGER.fatal("Unable to delete file:- {}, {}", p, ex.getMessage());
+            return false;
+        }
+    }
+
+    private Properties loadCursor() {
+        Properties cursor = new Properties();
+        if (Files.exists(cursorFile)) {
+            try (Reader reader = Files.newBufferedReader(cursorFile)) {
+                cursor.load(reader);
+            } catch (IOException | IllegalArgumentException ex) {
+                LOGGER.warn("Unable to read retention cursor {}, starting from the beginning, {}", cursorFile, ex.getMessage());
+            }
+        }
+        return cursor;
+    }
+
+    private void saveCursor(Properties cursor) throws IOException {
+        cursor.setProperty("lastSweep", Instant.now().toString());
+        Path tmp = cursorFile.resolveSibling(CURSOR_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            cursor.store(writer, "Retention sweep cursor");
+        }
+        Files.move(tmp, cursorFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
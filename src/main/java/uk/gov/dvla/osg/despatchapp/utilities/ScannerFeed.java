@@ -0,0 +1,312 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import uk.gov.dvla.osg.despatchapp.metrics.Metrics;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.ScanResult;
+
+/**
+ * Takes barcodes from fixed-mount scanners over TCP, so that several scanners can feed
+ * one site. Each scanner connects to the site's port and sends one barcode per line.
+ * Every connection is read on its own thread, and the barcodes from all of them are put
+ * on one lock-free queue. The queue is drained on the JavaFX thread, where each barcode
+ * is checked and saved in the same way as one from the keyboard wedge scanner.
+ * <p>
+ * The feed listens on the loopback address unless it is given another, and only takes
+ * connections from the allowed scanners, or from this PC if none are listed. Connections
+ * past the limit are closed, so the number of reader threads is bounded.
+ * <p>
+ * Counts are kept for each scanner, by its address, and are published as metrics.
+ */
+public class ScannerFeed {
+
+    static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int JID_LENGTH = 10;
+    // Longest line kept, anything longer is not a Job ID
+    private static final int MAX_LINE = 64;
+    private static final int READ_BUFFER = 4096;
+
+    private final String name;
+    private final ServerSocket server;
+    private final Runnable onArrival;
+    private final Set<InetAddress> allowed;
+    private final int maxConnections;
+    private final Queue<Scan> queue = new ConcurrentLinkedQueue<>();
+    // Set while a drain has been asked for and not yet started
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Starts listening for scanners.
+     *
+     * @param name the name of the feed, used in thread and metric names
+     * @param bindAddress the address to listen on, or null for the loopback address
+     * @param port the port to listen on, or 0 for any free port
+     * @param allowed the addresses of the scanners allowed to connect, or empty for loopback addresses only
+     * @param maxConnections the most scanners connected at the same time
+     * @param onArrival called from a connection thread when barcodes arrive and no drain is pending
+     * @throws IOException if the port cannot be opened
+     */
+    public ScannerFeed(String name, InetAddress bindAddress, int port, Collection<InetAddress> allowed, int maxConnections,
+            Runnable onArrival) throws IOException {
+        this.name = name;
+        this.onArrival = onArrival;
+        this.allowed = new HashSet<>(allowed);
+        this.maxConnections = Math.max(1, maxConnections);
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(bindAddress != null ? bindAddress : InetAddress.getLoopbackAddress(), port));
+        Thread acceptor = new Thread(this::acceptConnections, "scanner-feed-" + name);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("Listening for {} scanners on {}", name, server.getLocalSocketAddress());
+    }
+
+    /**
+     * Gets the port the feed is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Takes every barcode waiting on the queue. Barcodes that arrive while this runs may
+     * be taken too, otherwise they ask for another drain.
+     *
+     * @param consumer given each barcode, in the order it arrived from its scanner
+     */
+    public void drain(Consumer<Scan> consumer) {
+        drainPending.set(false);
+        for (Scan scan = queue.poll(); scan != null; scan = queue.poll()) {
+            consumer.accept(scan);
+        }
+    }
+
+    /**
+     * Gets the scanners that have connected since the feed started.
+     *
+     * @return the scanners
+     */
+    public Collection<Source> getSources() {
+        return sources.values();
+    }
+
+    /**
+     * Stops listening and disconnects every scanner. Barcodes still on the queue are
+     * left there.
+     */
+    public void close() {
+        closed = true;
+        closeQuietly(server);
+        connections.forEach(ScannerFeed::closeQuietly);
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException ex) {
+                if (!closed) {
+                    LOGGER.error("{} scanner feed stopped, {}", name, ex.getMessage());
+                }
+                return;
+            }
+            InetAddress address = socket.getInetAddress();
+            if (allowed.isEmpty() ? !address.isLoopbackAddress() : !allowed.contains(address)) {
+                LOGGER.warn("{} scanner feed refused {}, it is not an allowed scanner", name, socket.getRemoteSocketAddress());
+                closeQuietly(socket);
+                continue;
+            }
+            if (connections.size() >= maxConnections) {
+                LOGGER.warn("{} scanner feed refused {}, {} scanners are already connected", name, socket.getRemoteSocketAddress(),
+                        maxConnections);
+                closeQuietly(socket);
+                continue;
+            }
+            Source source = sources.computeIfAbsent(address.getHostAddress(), this::newSource);
+            connections.add(socket);
+            Thread reader = new Thread(() -> read(socket, source), "scanner-" + source.name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private Source newSource(String address) {
+        Source source = new Source(address);
+        String prefix = "scanner." + name + "." + address + ".";
+        Metrics.gauge(prefix + "received", source.received::sum);
+        for (ScanResult result : ScanResult.values()) {
+            Metrics.gauge(prefix + result.name().toLowerCase(), source.results[result.ordinal()]::sum);
+        }
+        return source;
+    }
+
+    /**
+     * Reads barcodes from one scanner until it disconnects. Blank lines are ignored, and
+     * a line that is not a Job ID is still queued, so that it is reported like a bad
+     * scan from the keyboard wedge scanner.
+     */
+    private void read(Socket socket, Source source) {
+        LOGGER.info("{} scanner {} connected", name, socket.getRemoteSocketAddress());
+        byte[] buffer = new byte[READ_BUFFER];
+        long value = 0;
+        int length = 0;
+        boolean numeric = true;
+        try (InputStream in = socket.getInputStream()) {
+            socket.setTcpNoDelay(true);
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                boolean added = false;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        if (length > 0) {
+                            queue.offer(new Scan(source, numeric && length == JID_LENGTH ? value : -1));
+                            source.received.increment();
+                            added = true;
+                        }
+                        value = 0;
+                        length = 0;
+                        numeric = true;
+                    } else if (b != '\r' && length < MAX_LINE) {
+                        numeric &= b >= '0' && b <= '9';
+                        value = numeric ? value * 10 + (b - '0') : 0;
+                        length++;
+                    }
+                }
+                if (added && drainPending.compareAndSet(false, true)) {
+                    onArrival.run();
+                }
+            }
+        } catch (SocketException ex) {
+            // Closed by the scanner, or by close()
+        } catch (IOException ex) {
+            LOGGER.warn("{} scanner {} failed, {}", name, socket.getRemoteSocketAddress(), ex.getMessage());
+        } finally {
+            connections.remove(socket);
+            closeQuietly(socket);
+            LOGGER.info("{} scanner {} disconnected, {}", name, socket.getRemoteSocketAddress(), source);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Unable to close {}, {}", closeable, ex.getMessage());
+        }
+    }
+
+    /**
+     * A barcode read by a network scanner.
+     */
+    public static final class Scan {
+
+        private final Source source;
+        private final long jobId;
+        private final long receivedAt = System.nanoTime();
+
+        Scan(Source source, long jobId) {
+            this.source = source;
+            this.jobId = jobId;
+        }
+
+        /**
+         * Gets the numeric Job ID.
+         *
+         * @return the Job ID, or -1 if the barcode was not ten digits
+         */
+        public long getJobId() {
+            return JobId.isValid(jobId) ? jobId : -1;
+        }
+
+        Source getSource() {
+            return source;
+        }
+
+        /**
+         * Gets when the barcode arrived.
+         *
+         * @return the time, from {@link System#nanoTime()}
+         */
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+
+        /**
+         * Counts what happened to the barcode against its scanner.
+         *
+         * @param result the result
+         */
+        public void counted(ScanResult result) {
+            source.results[result.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Counts for one scanner.
+     */
+    public static final class Source {
+
+        private final String name;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder[] results = new LongAdder[ScanResult.values().length];
+
+        Source(String name) {
+            this.name = name;
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new LongAdder();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getReceived() {
+            return received.sum();
+        }
+
+        public long getCount(ScanResult result) {
+            return results[result.ordinal()].sum();
+        }
+
+        @Override
+        public String toString() {
+            List<String> counts = new ArrayList<>();
+            counts.add("received=" + getReceived());
+            for (ScanResult result : ScanResult.values()) {
+                counts.add(result.name().toLowerCase() + "=" + getCount(result));
+            }
+            return String.join(" ", counts);
+        }
+    }
+}
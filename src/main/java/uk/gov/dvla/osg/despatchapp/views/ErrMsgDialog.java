@@ -1,30 +1,61 @@
 package uk.gov.dvla.osg.despatchapp.views;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.stage.Modality;
+import uk.gov.dvla.osg.despatchapp.utilities.FxUtils;
 
 public class ErrMsgDialog {
 
-    private static final Alert DIALOG = new Alert(AlertType.ERROR);
+    static final Logger LOGGER = LogManager.getLogger();
 
-    static {
-        DIALOG.setAlertType(AlertType.ERROR);
-        // show above form
-        DIALOG.initModality(Modality.APPLICATION_MODAL);
-        // Dialog can grow down but not across
-        DIALOG.getDialogPane().setMaxWidth(500); 
-    }
+    // Set when running without a GUI, errors are then only logged
+    private static volatile boolean headless;
+    // Created on first use, as it must be created on the JavaFX thread
+    private static Alert dialog;
     
     public static void show(String code, String message) {
         show(code,message,"Please contact Dev Team if problem persists.");
     }
     
+    /**
+     * Shows the dialog and waits for it to close. May be called from a background thread.
+     */
     public static void show(String code, String message, String action) {
-        DIALOG.setTitle(code);
-        DIALOG.setHeaderText(message);
-        DIALOG.setContentText(action);
-        DIALOG.showAndWait();
+        if (headless) {
+            LOGGER.error("{}: {} {}", code, message, action);
+            return;
+        }
+        FxUtils.runAndWait(() -> {
+            Alert alert = getDialog();
+            alert.setTitle(code);
+            alert.setHeaderText(message);
+            alert.setContentText(action);
+            alert.showAndWait();
+        });
+    }
+
+    /**
+     * Logs errors instead of showing them, for when the application runs without a GUI.
+     *
+     * @param headless true, if there is no GUI
+     */
+    public static void setHeadless(boolean headless) {
+        ErrMsgDialog.headless = headless;
+    }
+
+    private static Alert getDialog() {
+        if (dialog == null) {
+            dialog = new Alert(AlertType.ERROR);
+            // show above form
+            dialog.initModality(Modality.APPLICATION_MODAL);
+            // Dialog can grow down but not across
+            dialog.getDialogPane().setMaxWidth(500);
+        }
+        return dialog;
     }
 
 }
@@ -0,0 +1,77 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.models.JobIdIndex;
+import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteConfig config;
+    private FileManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        config = SiteConfig.builder()
+                .SiteName(PrintSite.MORRISTON)
+                .TempFile(dir.resolve("temp").resolve("MORRISTON.txt").toString())
+                .DatFile(dir.resolve("MORRISTON.").toString())
+                .EotFile(dir.resolve("MORRISTON.").toString())
+                .Report(dir.resolve("MORRISTON.").toString())
+                .Repository(dir.toString())
+                .build();
+        manager = new FileManager(config);
+        manager.read();
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    public void loadsFirstFieldOfEachLine() throws IOException {
+        JobIdIndex index = new JobIdIndex();
+        index.add(1_000_000_003L);
+        Path input = folder.getRoot().toPath().resolve("input.csv");
+        String text = "\uFEFF1000000001,first\r\n"
+                + "\"1000000002\";second\r\n"
+                + "\r\n"
+                + "1000000003\talready scanned\n"
+                + "100000000\n"
+                + "10000000044\n"
+                + "1000000001\n"
+                + "ABC\n"
+                + " 1000000005 ";
+        Files.write(input, text.getBytes(StandardCharsets.UTF_8));
+
+        BulkLoader loader = new BulkLoader(manager, index);
+        loader.load(input);
+
+        assertEquals(8, loader.getLines());
+        assertEquals(3, loader.getAdded());
+        assertEquals(2, loader.getDuplicates());
+        assertEquals(3, loader.getInvalid());
+
+        manager.close();
+        manager = new FileManager(config);
+        assertArrayEquals(new long[] { 1_000_000_001L, 1_000_000_002L, 1_000_000_005L }, manager.read());
+    }
+}
@@ -0,0 +1,66 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+
+public class DatFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void splitsJobIdsAcrossFiles() throws IOException {
+        Path batch = batch(5, "\n");
+        List<Path> dats = Arrays.asList(folder.getRoot().toPath().resolve("1.DAT"), folder.getRoot().toPath().resolve("2.DAT"));
+
+        assertArrayEquals(new int[] { 3, 2 }, DatFileWriter.write(batch, dats, 3));
+        assertEquals(Arrays.asList("1000000001", "1000000002", "1000000003"), Files.readAllLines(dats.get(0)));
+        assertEquals(Arrays.asList("1000000004", "1000000005"), Files.readAllLines(dats.get(1)));
+    }
+
+    @Test
+    public void readsCrlfAndLastLineWithoutNewline() throws IOException {
+        Path batch = batch(3, "\r\n");
+        String text = new String(Files.readAllBytes(batch), StandardCharsets.UTF_8);
+        Files.write(batch, text.substring(0, text.length() - 2).getBytes(StandardCharsets.UTF_8));
+        List<Path> dats = Collections.singletonList(folder.getRoot().toPath().resolve("1.DAT"));
+
+        assertArrayEquals(new int[] { 3 }, DatFileWriter.write(batch, dats, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("1000000001", "1000000002", "1000000003"), Files.readAllLines(dats.get(0)));
+    }
+
+    @Test
+    public void skipsBlankLines() throws IOException {
+        Path batch = folder.getRoot().toPath().resolve("records");
+        String record = JobId.newInstance(1_000_000_001L).toString();
+        Files.write(batch, ("\n" + record + "\n\n").getBytes(StandardCharsets.UTF_8));
+        List<Path> dats = Collections.singletonList(folder.getRoot().toPath().resolve("1.DAT"));
+
+        assertArrayEquals(new int[] { 1 }, DatFileWriter.write(batch, dats, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("1000000001"), Files.readAllLines(dats.get(0)));
+    }
+
+    private Path batch(int records, String newline) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= records; i++) {
+            text.append(JobId.newInstance(1_000_000_000L + i)).append(newline);
+        }
+        Path batch = folder.getRoot().toPath().resolve("records");
+        Files.write(batch, text.toString().getBytes(StandardCharsets.UTF_8));
+        return batch;
+    }
+}
@@ -0,0 +1,199 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dvla.osg.despatchapp.config.SiteConfig;
+import uk.gov.dvla.osg.despatchapp.data.Batch.ChunkPhase;
+import uk.gov.dvla.osg.despatchapp.data.Batch.Phase;
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+import uk.gov.dvla.osg.despatchapp.models.PrintSite;
+import uk.gov.dvla.osg.despatchapp.models.SubmitStage;
+import uk.gov.dvla.osg.rpd.web.error.RpdErrorResponse;
+
+/**
+ * A batch of three records sent as two DAT/EOT pairs, resumed after the application
+ * stopped with the first pair at each phase.
+ */
+public class FileManagerResumeTest {
+
+    private static final String TIME_STAMP = "01012026_120000";
+    private static final String DAT = "MORRISTON." + TIME_STAMP + "_1.DAT";
+    private static final String EOT = "MORRISTON." + TIME_STAMP + "_1.EOT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteConfig config;
+    private Outbox outbox;
+    private FileManager manager;
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        config = SiteConfig.builder()
+                .SiteName(PrintSite.MORRISTON)
+                .TempFile(dir.resolve("temp").resolve("MORRISTON.txt").toString())
+                .DatFile(dir.resolve("MORRISTON.").toString())
+                .EotFile(dir.resolve("MORRISTON.").toString())
+                .Report(dir.resolve("MORRISTON.").toString())
+                .Repository(dir.toString())
+                .MaxRunVol(2)
+                .SubmitThreads(2)
+                .build();
+        outbox = new Outbox(dir.resolve("outbox"), PrintSite.MORRISTON.name());
+        Files.createDirectories(dir.resolve("outbox"));
+        Batch batch = outbox.create(TIME_STAMP, "user", 2);
+        List<String> records = new ArrayList<>();
+        for (long id = 1_000_000_001L; id <= 1_000_000_003L; id++) {
+            records.add(JobId.newInstance(id).toString());
+        }
+        Files.write(batch.getFile().toPath(), records, FileManager.ENCODING);
+        batch.tempCleared(records.size());
+    }
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    @Test
+    public void resumeFromPending() throws IOException {
+        stopAt(ChunkPhase.PENDING);
+        assertEquals(Arrays.asList(DAT, EOT), resume());
+    }
+
+    @Test
+    public void resumeFromDatWritten() throws IOException {
+        stopAt(ChunkPhase.DAT_WRITTEN);
+        assertEquals(Arrays.asList(DAT, EOT), resume());
+    }
+
+    @Test
+    public void resumeFromDatSent() throws IOException {
+        stopAt(ChunkPhase.DAT_SENT);
+        assertEquals(Arrays.asList(EOT), resume());
+    }
+
+    @Test
+    public void resumeFromEotWritten() throws IOException {
+        stopAt(ChunkPhase.EOT_WRITTEN);
+        assertEquals(Arrays.asList(EOT), resume());
+    }
+
+    @Test
+    public void resumeFromEotSent() throws IOException {
+        stopAt(ChunkPhase.EOT_SENT);
+        assertEquals(Collections.emptyList(), resume());
+    }
+
+    @Test
+    public void datInLedgerIsNotSentAgain() throws IOException {
+        // The DAT file reached RPD, but its phase was not saved
+        Batch batch = stopAt(ChunkPhase.DAT_WRITTEN);
+        outbox.recordSent(TIME_STAMP, 0, batch.getHash(0), DAT);
+        assertEquals(Arrays.asList(EOT), resume());
+    }
+
+    @Test
+    public void changedDatInLedgerIsSentAgain() throws IOException {
+        stopAt(ChunkPhase.DAT_WRITTEN);
+        outbox.recordSent(TIME_STAMP, 0, "another hash", DAT);
+        assertEquals(Arrays.asList(DAT, EOT), resume());
+    }
+
+    /**
+     * Writes the DAT files, stopping before they are sent, then puts the first pair at
+     * the given phase.
+     */
+    private Batch stopAt(ChunkPhase phase) throws IOException {
+        Batch batch = open();
+        assertFalse(manager.trySendToRpd(batch, stage -> stage != SubmitStage.SENDING_DAT));
+        assertEquals(ChunkPhase.DAT_WRITTEN, batch.getChunkPhase(0));
+        batch.setChunkPhase(0, phase);
+        if (phase.compareTo(ChunkPhase.EOT_WRITTEN) >= 0) {
+            Path datFile = find(DAT);
+            Files.write(datFile.resolveSibling(EOT), Arrays.asList("RUNVOL=2", "USER=user", "RUNDATE=01012026"), FileManager.ENCODING);
+        }
+        manager.close();
+        manager = null;
+        assertEquals(Collections.emptyList(), sent);
+        return batch;
+    }
+
+    /**
+     * Opens the site again and sends the batch left in the outbox.
+     *
+     * @return the files of the first pair that were sent
+     */
+    private List<String> resume() throws IOException {
+        Batch batch = open();
+        assertTrue(manager.trySendToRpd(batch, stage -> true));
+        assertEquals(Phase.SENT, batch.getPhase());
+        for (int i = 0; i < batch.getChunks(); i++) {
+            assertEquals(ChunkPhase.EOT_SENT, batch.getChunkPhase(i));
+        }
+        // The second pair was only written, so it is always sent in full
+        List<String> second = new ArrayList<>();
+        List<String> first = new ArrayList<>();
+        synchronized (sent) {
+            for (String name : sent) {
+                (name.contains("_2.") ? second : first).add(name);
+            }
+        }
+        assertEquals(Arrays.asList("MORRISTON." + TIME_STAMP + "_2.DAT", "MORRISTON." + TIME_STAMP + "_2.EOT"), second);
+        return first;
+    }
+
+    private Path find(String name) throws IOException {
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().equals(name)).findFirst().get();
+        }
+    }
+
+    private Batch open() throws IOException {
+        manager = new FileManager(config);
+        manager.setRpdClient(new RecordingClient());
+        manager.read();
+        assertEquals(1, manager.getPendingBatches().size());
+        return manager.getPendingBatches().get(0);
+    }
+
+    /**
+     * Accepts every file, noting its name. A file that is missing is noted as such, as
+     * an assertion would be lost on the submit threads.
+     */
+    private class RecordingClient implements FileManager.RpdClient {
+
+        @Override
+        public boolean trySubmit(File file) {
+            sent.add(file.exists() ? file.getName() : "missing " + file.getName());
+            return true;
+        }
+
+        @Override
+        public RpdErrorResponse getErrorResponse() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import org.junit.Test;
+
+public class JobIdBitmapTest {
+
+    @Test
+    public void containsEveryJobIdInArrayAndBitmapContainers() {
+        // A sparse container, a full one past ARRAY_MAX, and a Job ID at the top of the range
+        long[] ids = LongStream.concat(
+                LongStream.of(5, 70_000, 70_002),
+                LongStream.concat(LongStream.range(1_000_000_000L, 1_000_010_000L), LongStream.of(9_999_999_999L)))
+                .toArray();
+        JobIdBitmap bitmap = JobIdBitmap.wrap(JobIdBitmap.serialize(ids, ids.length));
+
+        assertEquals(ids.length, bitmap.cardinality());
+        for (long id : ids) {
+            assertTrue("Job ID " + id, bitmap.contains(id));
+        }
+        assertFalse(bitmap.contains(6));
+        assertFalse(bitmap.contains(70_001));
+        assertFalse(bitmap.contains(999_999_999L));
+        assertFalse(bitmap.contains(1_000_010_000L));
+        assertArrayEquals(ids, Arrays.copyOf(bitmap.toArray(2), ids.length));
+        assertEquals(ids.length + 2, bitmap.toArray(2).length);
+    }
+
+    @Test
+    public void emptyBitmap() {
+        JobIdBitmap bitmap = JobIdBitmap.wrap(JobIdBitmap.serialize(new long[0], 0));
+        assertEquals(0, bitmap.cardinality());
+        assertFalse(bitmap.contains(1_000_000_001L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrapRejectsDamagedBytes() {
+        ByteBuffer buffer = JobIdBitmap.serialize(new long[] { 1, 2, 3 }, 3);
+        int last = buffer.limit() - 5;
+        buffer.put(last, (byte) (buffer.get(last) ^ 1));
+        JobIdBitmap.wrap(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrapRejectsTruncatedBytes() {
+        ByteBuffer buffer = JobIdBitmap.serialize(new long[] { 1, 2, 3 }, 3);
+        buffer.limit(buffer.limit() - 4);
+        JobIdBitmap.wrap(buffer);
+    }
+}
@@ -0,0 +1,155 @@
+package uk.gov.dvla.osg.despatchapp.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dvla.osg.despatchapp.models.JobId;
+
+public class SiteJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private SiteJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.getRoot().toPath().resolve("temp").resolve("MORRISTON.txt");
+        journal = new SiteJournal(file);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    public void reopenCutsOffTornTail() throws IOException {
+        journal.open();
+        List<String> expected = addRecords(3);
+        journal.close();
+        // A power failure part way through the fourth record
+        append(JobId.newInstance(1_000_000_099L).toString().substring(0, 12));
+
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+        expected.addAll(addRecords(1));
+        journal.close();
+
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+        assertEquals(4L * SiteJournal.RECORD_BYTES, Files.size(file));
+    }
+
+    @Test
+    public void reopenKeepsWholeRecordWithoutNewline() throws IOException {
+        String record = JobId.newInstance(1_000_000_001L).toString();
+        Files.createDirectories(file.getParent());
+        Files.write(file, record.getBytes(StandardCharsets.UTF_8));
+
+        journal.open();
+        List<String> expected = new ArrayList<>();
+        expected.add(record);
+        expected.addAll(addRecords(1));
+        journal.close();
+
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+    }
+
+    @Test
+    public void reopenReadsCrlfRecords() throws IOException {
+        String first = JobId.newInstance(1_000_000_001L).toString();
+        String second = JobId.newInstance(1_000_000_002L).toString();
+        Files.createDirectories(file.getParent());
+        Files.write(file, (first + "\r\n" + second + "\r\n").getBytes(StandardCharsets.UTF_8));
+
+        long[] ids = journal.open();
+        assertArrayEquals(new long[] { 1_000_000_001L, 1_000_000_002L }, ids);
+        assertEquals(2, records(journal).size());
+        assertEquals(0, journal.getAnomalies().size());
+    }
+
+    @Test
+    public void reopenAfterRemoveSkipsRemovedRecords() throws IOException {
+        journal.open();
+        List<String> expected = addRecords(5);
+        journal.remove(1);
+        expected.remove(1);
+        journal.remove(3);
+        expected.remove(3);
+        journal.close();
+
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+    }
+
+    @Test
+    public void reopenAfterCompaction() throws IOException {
+        journal.open();
+        List<String> expected = addRecords(2000);
+        // Enough removals to pass the compaction threshold, spread through the list. The
+        // compaction runs in the background while the later removals are written.
+        for (int i = 0; i < 600; i++) {
+            int index = (i * 7) % expected.size();
+            journal.remove(index);
+            expected.remove(index);
+        }
+        // Waits for the compaction to finish
+        journal.close();
+
+        assertTrue("Journal was not compacted", Files.size(file) < (2000L + 600) * SiteJournal.RECORD_BYTES);
+
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+        journal.close();
+
+        // And again without the snapshot, parsing the whole file
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".snapshot"));
+        journal = new SiteJournal(file);
+        journal.open();
+        assertEquals(expected, records(journal));
+    }
+
+    private List<String> addRecords(int count) throws IOException {
+        List<String> added = new ArrayList<>();
+        int first = journal.size();
+        for (int i = 0; i < count; i++) {
+            String record = JobId.newInstance(1_000_000_000L + first + i).toString();
+            journal.add(record);
+            added.add(record);
+        }
+        return added;
+    }
+
+    private void append(String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static List<String> records(SiteJournal journal) throws IOException {
+        List<String> records = new ArrayList<>();
+        journal.forEachRecord(records::add);
+        return records;
+    }
+}
@@ -0,0 +1,77 @@
+package uk.gov.dvla.osg.despatchapp.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class JobIdIndexTest {
+
+    @Test
+    public void removeLeavesOtherIdsFindable() {
+        JobIdIndex index = new JobIdIndex();
+        for (long id = 0; id < 500; id++) {
+            index.add(id);
+        }
+        for (long id = 0; id < 500; id += 3) {
+            assertTrue(index.remove(id));
+        }
+        for (long id = 0; id < 500; id++) {
+            assertEquals("Job ID " + id, id % 3 != 0, index.contains(id));
+        }
+        assertEquals(500 - 167, index.size());
+    }
+
+    @Test
+    public void removeMissingIdReturnsFalse() {
+        JobIdIndex index = new JobIdIndex();
+        index.add(1_000_000_001L);
+        assertFalse(index.remove(1_000_000_002L));
+        assertFalse(index.remove(-1L));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void removedIdCanBeAddedAgain() {
+        JobIdIndex index = new JobIdIndex();
+        assertTrue(index.add(1_000_000_001L));
+        assertTrue(index.remove(1_000_000_001L));
+        assertFalse(index.contains(1_000_000_001L));
+        assertTrue(index.add(1_000_000_001L));
+        assertFalse(index.add(1_000_000_001L));
+    }
+
+    @Test
+    public void randomAddsAndRemovesMatchHashSet() {
+        // A small key range in a table that grows, so probe chains collide and wrap
+        Random random = new Random(42);
+        JobIdIndex index = new JobIdIndex();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            long id = random.nextInt(5000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(id), index.add(id));
+            } else {
+                assertEquals(expected.remove(id), index.remove(id));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        for (long id = 0; id < 5000; id++) {
+            assertEquals(expected.contains(id), index.contains(id));
+        }
+    }
+
+    @Test
+    public void clearEmptiesIndex() {
+        JobIdIndex index = new JobIdIndex();
+        index.addAll(new long[] { 1, 2, 3 });
+        index.clear();
+        assertEquals(0, index.size());
+        assertFalse(index.contains(2));
+    }
+}
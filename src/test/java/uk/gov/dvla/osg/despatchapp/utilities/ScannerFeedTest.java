@@ -0,0 +1,176 @@
+package uk.gov.dvla.osg.despatchapp.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.gov.dvla.osg.despatchapp.models.ScanResult;
+import uk.gov.dvla.osg.despatchapp.utilities.ScannerFeed.Source;
+
+/**
+ * Scanners on several loopback addresses, so each one is counted as its own source.
+ */
+public class ScannerFeedTest {
+
+    private static final String[] SCANNERS = { "127.0.0.1", "127.0.0.2", "127.0.0.3" };
+    private static final int LINES = 200;
+
+    private ScannerFeed feed;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        if (feed != null) {
+            feed.close();
+        }
+    }
+
+    @Test
+    public void countsEachScannerAndKeepsItsOrder() throws IOException {
+        feed = new ScannerFeed("TEST", null, 0, Collections.emptyList(), SCANNERS.length, () -> { });
+        for (int s = 0; s < SCANNERS.length; s++) {
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < LINES; i++) {
+                lines.append(jobId(s, i)).append(i % 2 == 0 ? "\r\n" : "\n");
+            }
+            // Not a Job ID, still counted and queued
+            lines.append("NOT A JOB ID\n");
+            send(connect(SCANNERS[s]), lines.toString());
+        }
+        waitFor(() -> received() == SCANNERS.length * (LINES + 1));
+
+        Map<String, List<Long>> drained = new HashMap<>();
+        feed.drain(scan -> {
+            drained.computeIfAbsent(scan.getSource().getName(), name -> new ArrayList<>()).add(scan.getJobId());
+            scan.counted(scan.getJobId() < 0 ? ScanResult.NOT_A_JOB_ID : ScanResult.ADDED);
+        });
+
+        assertEquals(SCANNERS.length, feed.getSources().size());
+        for (int s = 0; s < SCANNERS.length; s++) {
+            List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < LINES; i++) {
+                expected.add(jobId(s, i));
+            }
+            expected.add(-1L);
+            assertEquals("Scans from " + SCANNERS[s], expected, drained.get(SCANNERS[s]));
+        }
+        for (Source source : feed.getSources()) {
+            assertEquals(LINES + 1, source.getReceived());
+            assertEquals(LINES, source.getCount(ScanResult.ADDED));
+            assertEquals(1, source.getCount(ScanResult.NOT_A_JOB_ID));
+        }
+    }
+
+    @Test
+    public void refusesScannerNotAllowed() throws IOException {
+        feed = new ScannerFeed("TEST", null, 0, Arrays.asList(InetAddress.getByName("127.0.0.2")), 4, () -> { });
+
+        assertFalse(isAccepted(connect("127.0.0.3")));
+        Socket allowed = connect("127.0.0.2");
+        assertTrue(isAccepted(allowed));
+        send(allowed, "1000000001\n");
+        waitFor(() -> received() == 1);
+        assertEquals(1, feed.getSources().size());
+        assertEquals("127.0.0.2", feed.getSources().iterator().next().getName());
+    }
+
+    @Test
+    public void refusesConnectionsPastLimit() throws IOException {
+        feed = new ScannerFeed("TEST", null, 0, Collections.emptyList(), 2, () -> { });
+        Socket first = connect("127.0.0.1");
+        Socket second = connect("127.0.0.2");
+        assertTrue(isAccepted(first));
+        assertTrue(isAccepted(second));
+        assertFalse(isAccepted(connect("127.0.0.3")));
+
+        // A place is free again once a scanner disconnects
+        first.close();
+        waitFor(() -> {
+            try {
+                return isAccepted(connect("127.0.0.3"));
+            } catch (IOException ex) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    public void listensOnLoopbackByDefault() throws IOException {
+        feed = new ScannerFeed("TEST", null, 0, Collections.emptyList(), 1, () -> { });
+        Socket client = connect("127.0.0.1");
+        assertTrue(client.getInetAddress().isLoopbackAddress());
+        assertTrue(isAccepted(client));
+    }
+
+    private static long jobId(int scanner, int line) {
+        return 1_000_000_000L + scanner * 100_000L + line;
+    }
+
+    private long received() {
+        return feed.getSources().stream().mapToLong(Source::getReceived).sum();
+    }
+
+    private Socket connect(String from) throws IOException {
+        Socket client = new Socket();
+        clients.add(client);
+        client.bind(new InetSocketAddress(from, 0));
+        client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), feed.getPort()), 5000);
+        return client;
+    }
+
+    private static void send(Socket client, String lines) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(lines.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * A connection the feed keeps open is still waiting for data when the read times
+     * out, one it refused has been closed.
+     */
+    private static boolean isAccepted(Socket client) throws IOException {
+        client.setSoTimeout(300);
+        try {
+            return client.getInputStream().read() >= 0;
+        } catch (SocketTimeoutException ex) {
+            return true;
+        } catch (SocketException ex) {
+            return false;
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}